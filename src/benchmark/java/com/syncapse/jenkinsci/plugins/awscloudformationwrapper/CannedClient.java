@@ -0,0 +1,56 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.io.PrintStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+
+/**
+ * Clients answering every call with a result prepared beforehand, so benchmarks only measure the plugin.
+ */
+final class CannedClient {
+
+    static final PrintStream NULL_LOGGER = new PrintStream(new NullOutputStream());
+
+    private CannedClient() {
+
+    }
+
+    /**
+     * @param results the results of the calls, each returned by the methods declaring its type.
+     */
+    static AmazonCloudFormation answering(final Object... results) {
+
+        return (AmazonCloudFormation) Proxy.newProxyInstance(AmazonCloudFormation.class.getClassLoader(), new Class<?>[] { AmazonCloudFormation.class },
+                                                             new Answers(results));
+    }
+
+    private static final class Answers implements InvocationHandler {
+
+        private final Object[] results;
+
+        Answers(final Object[] results) {
+
+            this.results = results;
+        }
+
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Exception {
+
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(this, args);
+            }
+            for (final Object result : results) {
+                if (method.getReturnType()
+                          .isInstance(result)) {
+                    return result;
+                }
+            }
+            return null;
+        }
+    }
+
+}
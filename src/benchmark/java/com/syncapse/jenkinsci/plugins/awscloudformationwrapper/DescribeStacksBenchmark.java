@@ -0,0 +1,72 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.DescribeStacksResult;
+import com.amazonaws.services.cloudformation.model.Parameter;
+import com.amazonaws.services.cloudformation.model.Stack;
+import com.amazonaws.services.cloudformation.model.StackStatus;
+
+/**
+ * Reading the stack out of a DescribeStacks result, the way the plugin does for every status check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DescribeStacksBenchmark {
+
+    @Param({ "1", "100", "1000" })
+    public int stackCount;
+
+    private CloudFormation cloudFormation;
+
+    @Setup
+    public void setUp() {
+
+        final List<Stack> stacks = new ArrayList<Stack>();
+        for (int i = 0; i < stackCount; i++) {
+            final List<Parameter> parameters = new ArrayList<Parameter>();
+            for (int p = 0; p < 20; p++) {
+                parameters.add(new Parameter().withParameterKey("Parameter" + p)
+                                              .withParameterValue("value-" + p));
+            }
+            stacks.add(new Stack().withStackName("stack" + i)
+                                  .withStackId("arn:aws:cloudformation:us-east-1:123456789012:stack/stack" + i + "/1")
+                                  .withStackStatus(StackStatus.CREATE_COMPLETE.toString())
+                                  .withParameters(parameters));
+        }
+        final AmazonCloudFormation client = CannedClient.answering(new DescribeStacksResult().withStacks(stacks));
+        cloudFormation = new CloudFormation(CannedClient.NULL_LOGGER, "stack0", "prefix", "{}", new HashMap<String, String>(), 0, "accessKey",
+                                            "secretKey", true, new EnvVars(), false) {
+
+            @Override
+            protected AmazonCloudFormation getAWSClient() {
+
+                return client;
+            }
+        };
+    }
+
+    @Benchmark
+    public Map<String, String> getStackParameters() {
+
+        return cloudFormation.getStackParameters("stack0");
+    }
+
+}
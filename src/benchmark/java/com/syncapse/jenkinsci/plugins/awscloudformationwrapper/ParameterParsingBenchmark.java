@@ -0,0 +1,62 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing of the parameters of wrapper and build step stacks, every value referencing a build variable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParameterParsingBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int parameterCount;
+
+    private StackBean stackBean;
+    private PostBuildStackBean postBuildStackBean;
+    private EnvVars env;
+
+    @Setup
+    public void setUp() {
+
+        final StringBuilder parameters = new StringBuilder();
+        env = new EnvVars();
+        for (int i = 0; i < parameterCount; i++) {
+            parameters.append(i > 0 ? ";" : "")
+                      .append("Parameter")
+                      .append(i)
+                      .append("=$VALUE")
+                      .append(i);
+            env.put("VALUE" + i, "value-" + i);
+        }
+        stackBean = new StackBean("stack", "prefix", "description", "stack.json", parameters.toString(), 0, "accessKey", "secretKey", true, "us-east-1");
+        postBuildStackBean = new PostBuildStackBean("stack", "prefix", "description", "stack.json", parameters.toString(), 0, "accessKey", "secretKey",
+                                                    "us-east-1", 0);
+    }
+
+    @Benchmark
+    public Map<String, String> stackBean() {
+
+        return stackBean.getParsedParameters(env);
+    }
+
+    @Benchmark
+    public Map<String, String> postBuildStackBean() {
+
+        return postBuildStackBean.getParsedParameters(env);
+    }
+
+}
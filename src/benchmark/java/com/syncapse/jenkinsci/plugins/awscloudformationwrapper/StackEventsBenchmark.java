@@ -0,0 +1,62 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsResult;
+import com.amazonaws.services.cloudformation.model.StackEvent;
+
+/**
+ * Formatting and printing the events of a stack, as done after every status check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StackEventsBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int eventCount;
+
+    private AmazonCloudFormation client;
+    private StackEvent event;
+
+    @Setup
+    public void setUp() {
+
+        final List<StackEvent> events = new ArrayList<StackEvent>();
+        for (int i = eventCount; i > 0; i--) {
+            events.add(new StackEvent().withEventId("event-" + i)
+                                       .withResourceType("AWS::EC2::Instance")
+                                       .withResourceStatus("CREATE_IN_PROGRESS")
+                                       .withResourceStatusReason("Resource creation Initiated")
+                                       .withTimestamp(new Date(i)));
+        }
+        event = events.get(0);
+        client = CannedClient.answering(new DescribeStackEventsResult().withStackEvents(events));
+    }
+
+    @Benchmark
+    public String format() {
+
+        return StackEventTailer.format(event);
+    }
+
+    @Benchmark
+    public void tail() {
+
+        new StackEventTailer(CannedClient.NULL_LOGGER).tail(client, "stack");
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Exporting the outputs of created stacks as build variables.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StackOutputsBenchmark {
+
+    private static final int STACKS = 5;
+
+    @Param({ "10", "100", "500" })
+    public int outputCount;
+
+    private CloudFormation cloudFormation;
+    private StackOutputsAction action;
+
+    @Setup
+    public void setUp() throws Exception {
+
+        action = new StackOutputsAction();
+        for (int i = 0; i < STACKS; i++) {
+            final CloudFormation created = newCloudFormation("stack" + i);
+            action.add(new StackOutputsAction.StackRecord(created));
+            if (cloudFormation == null) {
+                cloudFormation = created;
+            }
+        }
+    }
+
+    private CloudFormation newCloudFormation(final String stackName) {
+
+        final Map<String, String> outputs = new HashMap<String, String>();
+        for (int i = 0; i < outputCount; i++) {
+            outputs.put("Output" + i, "value-" + i);
+        }
+        final CloudFormation cloudFormation = new CloudFormation(CannedClient.NULL_LOGGER, stackName, "prefix", "{}", new HashMap<String, String>(), 0,
+                                                                 "accessKey", "secretKey", true, new EnvVars(), false);
+        cloudFormation.adopt("arn:aws:cloudformation:us-east-1:123456789012:stack/" + stackName + "/1", outputs);
+        return cloudFormation;
+    }
+
+    @Benchmark
+    public Map<String, String> getOutputs() {
+
+        return cloudFormation.getOutputs();
+    }
+
+    /**
+     * What {@link CloudFormationBuildWrapper#makeBuildVariables} does for each call.
+     */
+    @Benchmark
+    public Map<String, String> makeBuildVariables() {
+
+        final Map<String, String> variables = new HashMap<String, String>();
+        variables.putAll(action.getVariables());
+        return variables;
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.ListStacksResult;
+import com.amazonaws.services.cloudformation.model.StackSummary;
+
+/**
+ * Finding the oldest stack with a prefix, as the notifier does when deleting by prefix.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StackPrefixLookupBenchmark {
+
+    private static final int STACKS_PER_PREFIX = 10;
+
+    @Param({ "100", "1000", "10000" })
+    public int stackCount;
+
+    private AmazonCloudFormation client;
+    private StackSummaryIndex index;
+
+    @Setup
+    public void setUp() {
+
+        final List<StackSummary> summaries = new ArrayList<StackSummary>();
+        for (int i = 0; i < stackCount; i++) {
+            summaries.add(new StackSummary().withStackName("app" + i / STACKS_PER_PREFIX + "-" + i)
+                                            .withCreationTime(new Date(stackCount - i)));
+        }
+        client = CannedClient.answering(new ListStacksResult().withStackSummaries(summaries));
+        index = StackSummaryIndex.load(client);
+    }
+
+    /**
+     * Loading the index, done at most once per TTL and account.
+     */
+    @Benchmark
+    public StackSummaryIndex load() {
+
+        return StackSummaryIndex.load(client);
+    }
+
+    @Benchmark
+    public List<StackSummary> getStacksWithPrefix() {
+
+        return index.getStacksWithPrefix("app" + stackCount / STACKS_PER_PREFIX / 2 + "-");
+    }
+
+}
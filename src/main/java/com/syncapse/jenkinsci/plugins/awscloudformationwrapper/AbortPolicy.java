@@ -0,0 +1,31 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+/**
+ * What to do with a stack being created when its build is aborted.
+ */
+public enum AbortPolicy {
+    DELETE_IN_BACKGROUND("Delete the stack without waiting for it"),
+    DELETE_AND_WAIT("Delete the stack, waiting a short while for it"),
+    LEAVE("Leave the stack as it is");
+
+    public final String readableName;
+
+    private AbortPolicy(final String readableName) {
+
+        this.readableName = readableName;
+    }
+
+    public static AbortPolicy getDefault() {
+
+        return DELETE_IN_BACKGROUND;
+    }
+
+    /**
+     * @return the policy with the given name, the default one if there is none.
+     */
+    public static AbortPolicy parse(final String name) {
+
+        return name == null || name.isEmpty() ? getDefault() : valueOf(name);
+    }
+
+}
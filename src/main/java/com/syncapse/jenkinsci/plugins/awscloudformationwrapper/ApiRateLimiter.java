@@ -0,0 +1,142 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+
+/**
+ * Token bucket shared by all the calls to the CloudFormation API of one account and region, so that many builds
+ * polling at once queue up instead of being throttled by AWS.
+ *
+ * The bucket is kept as the time at which it will be full again, updated with compare-and-set: taking a token pushes
+ * that time one interval later, and a caller waits for as long as the bucket would be over its capacity. This needs no
+ * lock, and the rates are read on every call so configuration changes apply at once.
+ *
+ * Only the threads of builds wait for a token. A {@link StackWaitScheduler.Poll} is run again once a token is due
+ * instead, so that a throttled account does not hold up the polls of the other ones.
+ */
+final class ApiRateLimiter {
+
+    /**
+     * {@link System#nanoTime()} at which all the tokens taken so far are given back.
+     */
+    private final AtomicLong refilledAt = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Take a token, waiting for one if the bucket is empty.
+     *
+     * @param callsPerSecond the rate at which tokens are given back. 0 or less disables the limit.
+     * @param burst the number of calls allowed at once, the size of the bucket.
+     */
+    void acquire(final double callsPerSecond, final int burst) throws InterruptedException {
+
+        if (callsPerSecond <= 0) {
+            return;
+        }
+        final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / callsPerSecond);
+        final long capacity = Math.max(1, burst) * interval;
+
+        long wait;
+        while (true) {
+            final long now = System.nanoTime();
+            final long current = refilledAt.get();
+            final long next = Math.max(current, now) + interval;
+            if (refilledAt.compareAndSet(current, next)) {
+                wait = next - capacity - now;
+                break;
+            }
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Take a token if there is one, without waiting.
+     *
+     * @return 0 if a token was taken, otherwise the nanoseconds after which one is available.
+     */
+    long tryAcquire(final double callsPerSecond, final int burst) {
+
+        if (callsPerSecond <= 0) {
+            return 0;
+        }
+        final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / callsPerSecond);
+        final long capacity = Math.max(1, burst) * interval;
+
+        while (true) {
+            final long now = System.nanoTime();
+            final long current = refilledAt.get();
+            final long next = Math.max(current, now) + interval;
+            final long wait = next - capacity - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (refilledAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return a client taking a token from this bucket before every call of the given one, at the rates of the
+     *         {@link CloudFormationGlobalConfiguration}.
+     */
+    AmazonCloudFormation limit(final AmazonCloudFormation client) {
+
+        return (AmazonCloudFormation) Proxy.newProxyInstance(AmazonCloudFormation.class.getClassLoader(), new Class<?>[] { AmazonCloudFormation.class },
+                                                             new Limiter(client));
+    }
+
+    /**
+     * @return true for the requests to AWS, false for the methods configuring the client.
+     */
+    static boolean isApiCall(final Method method) {
+
+        final String name = method.getName();
+        return method.getDeclaringClass() == AmazonCloudFormation.class && !name.startsWith("set") && !name.equals("shutdown")
+               && !name.equals("getCachedResponseMetadata");
+    }
+
+    private final class Limiter implements InvocationHandler {
+
+        private final AmazonCloudFormation client;
+
+        Limiter(final AmazonCloudFormation client) {
+
+            this.client = client;
+        }
+
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+
+            if (isApiCall(method) && StackWaitScheduler.isPolling()) {
+                final CloudFormationGlobalConfiguration configuration = CloudFormationGlobalConfiguration.get();
+                final long wait = tryAcquire(configuration.getApiCallsPerSecond(), configuration.getApiBurst());
+                if (wait > 0) {
+                    throw new StackWaitScheduler.PollLater(TimeUnit.NANOSECONDS.toMillis(wait) + 1);
+                }
+            } else if (isApiCall(method)) {
+                final CloudFormationGlobalConfiguration configuration = CloudFormationGlobalConfiguration.get();
+                try {
+                    acquire(configuration.getApiCallsPerSecond(), configuration.getApiBurst());
+                } catch (final InterruptedException e) {
+                    Thread.currentThread()
+                          .interrupt();
+                    throw new AmazonClientException("Interrupted while waiting to call " + method.getName(), e);
+                }
+            }
+            try {
+                return method.invoke(client, args);
+            } catch (final InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,223 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+
+/**
+ * Retries the calls to the CloudFormation API that failed for a transient reason, and counts the retries so that they
+ * can be reported once per stack operation instead of once per call.
+ *
+ * Retries wait with decorrelated jitter: a random delay between the base delay and three times the previous one, capped,
+ * so that builds throttled together do not retry together. A call is given up once the next retry would end after its
+ * deadline.
+ *
+ * Only the threads of builds sleep between two attempts. A call failing in a {@link StackWaitScheduler.Poll} makes the
+ * poll run again after the delay instead, the delays growing from one poll to the next until a call succeeds.
+ */
+final class ApiRetrier {
+
+    private static final long BASE_DELAY = Long.getLong(ApiRetrier.class.getName() + ".baseDelay", 500);
+    private static final long MAX_DELAY = Long.getLong(ApiRetrier.class.getName() + ".maxDelay", 20000);
+
+    /**
+     * Seconds after which a failing call is given up.
+     */
+    private static final long DEADLINE = TimeUnit.SECONDS.toMillis(Long.getLong(ApiRetrier.class.getName() + ".deadline", 120));
+
+    private static final Set<String> THROTTLING_ERROR_CODES = new HashSet<String>(Arrays.asList("Throttling", "ThrottlingException",
+                                                                                                "RequestLimitExceeded", "TooManyRequestsException"));
+
+    /**
+     * Calls that may have taken effect when the connection failed, and would fail if sent again.
+     */
+    private static final Set<String> NOT_IDEMPOTENT = new HashSet<String>(Arrays.asList("createStack", "updateStack"));
+
+    enum ErrorKind {
+        THROTTLING(true), SERVER_ERROR(true), CONNECTION(true), CLIENT_ERROR(false), UNKNOWN(false);
+
+        final boolean retryable;
+
+        private ErrorKind(final boolean retryable) {
+
+            this.retryable = retryable;
+        }
+    }
+
+    private final long baseDelay;
+    private final long maxDelay;
+    private final long deadline;
+    private final Random random = new Random();
+
+    private final Map<ErrorKind, Integer> retries = new EnumMap<ErrorKind, Integer>(ErrorKind.class);
+    private long waited;
+
+    /**
+     * When the failing calls of polls are given up, 0 while they succeed.
+     */
+    private volatile long pollGiveUpAt;
+    private long pollDelay;
+
+    ApiRetrier() {
+
+        this(BASE_DELAY, MAX_DELAY, DEADLINE);
+    }
+
+    ApiRetrier(final long baseDelay, final long maxDelay, final long deadline) {
+
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return a client retrying the failed calls of the given one.
+     */
+    AmazonCloudFormation wrap(final AmazonCloudFormation client) {
+
+        return (AmazonCloudFormation) Proxy.newProxyInstance(AmazonCloudFormation.class.getClassLoader(), new Class<?>[] { AmazonCloudFormation.class },
+                                                             new Retrying(client));
+    }
+
+    static ErrorKind classify(final AmazonClientException e) {
+
+        if (e instanceof AmazonServiceException) {
+            final AmazonServiceException serviceException = (AmazonServiceException) e;
+            if (THROTTLING_ERROR_CODES.contains(serviceException.getErrorCode()) || serviceException.getStatusCode() == 429) {
+                return ErrorKind.THROTTLING;
+            }
+            return serviceException.getStatusCode() >= 500 ? ErrorKind.SERVER_ERROR : ErrorKind.CLIENT_ERROR;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return ErrorKind.CONNECTION;
+            }
+        }
+        return ErrorKind.UNKNOWN;
+    }
+
+    /**
+     * @return a line telling how many calls were retried since the last call, or null if none was.
+     */
+    synchronized String getSummary() {
+
+        if (retries.isEmpty()) {
+            return null;
+        }
+        int total = 0;
+        final StringBuilder kinds = new StringBuilder();
+        for (final Map.Entry<ErrorKind, Integer> entry : retries.entrySet()) {
+            total += entry.getValue();
+            kinds.append(kinds.length() > 0 ? ", " : "")
+                 .append(entry.getValue())
+                 .append(' ')
+                 .append(entry.getKey()
+                              .name()
+                              .toLowerCase()
+                              .replace('_', ' '));
+        }
+        final String summary = "Retried " + total + " AWS calls (" + kinds + "), waiting " + TimeUnit.MILLISECONDS.toSeconds(waited) + "s in total.";
+        retries.clear();
+        waited = 0;
+        return summary;
+    }
+
+    private synchronized void record(final ErrorKind kind, final long delay) {
+
+        final Integer count = retries.get(kind);
+        retries.put(kind, count != null ? count + 1 : 1);
+        waited += delay;
+    }
+
+    private synchronized long nextDelay(final long previous) {
+
+        final long upper = Math.max(baseDelay, previous * 3);
+        return Math.min(maxDelay, baseDelay + (long) (random.nextDouble() * (upper - baseDelay)));
+    }
+
+    /**
+     * @return the delay after which to poll again, or 0 if the failing calls of polls are given up.
+     */
+    private synchronized long nextPollDelay() {
+
+        final long now = System.currentTimeMillis();
+        if (pollGiveUpAt == 0) {
+            pollGiveUpAt = now + deadline;
+            pollDelay = baseDelay;
+        }
+        pollDelay = nextDelay(pollDelay);
+        if (now + pollDelay > pollGiveUpAt) {
+            pollGiveUpAt = 0;
+            return 0;
+        }
+        return pollDelay;
+    }
+
+    private final class Retrying implements InvocationHandler {
+
+        private final AmazonCloudFormation client;
+
+        Retrying(final AmazonCloudFormation client) {
+
+            this.client = client;
+        }
+
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+
+            final long giveUpAt = System.currentTimeMillis() + deadline;
+            long delay = baseDelay;
+            while (true) {
+                try {
+                    final Object result = method.invoke(client, args);
+                    if (pollGiveUpAt != 0) {
+                        pollGiveUpAt = 0;
+                    }
+                    return result;
+                } catch (final InvocationTargetException e) {
+                    if (!(e.getCause() instanceof AmazonClientException)) {
+                        throw e.getCause();
+                    }
+                    final ErrorKind kind = classify((AmazonClientException) e.getCause());
+                    // Throttled calls are rejected before being processed, so they are safe to send again.
+                    if (!kind.retryable || (kind != ErrorKind.THROTTLING && NOT_IDEMPOTENT.contains(method.getName()))) {
+                        throw e.getCause();
+                    }
+                    if (StackWaitScheduler.isPolling()) {
+                        final long pollLater = nextPollDelay();
+                        if (pollLater == 0) {
+                            throw e.getCause();
+                        }
+                        record(kind, pollLater);
+                        throw new StackWaitScheduler.PollLater(pollLater);
+                    }
+                    delay = nextDelay(delay);
+                    if (System.currentTimeMillis() + delay > giveUpAt) {
+                        throw e.getCause();
+                    }
+                    record(kind, delay);
+                    try {
+                        Thread.sleep(delay);
+                    } catch (final InterruptedException interrupted) {
+                        Thread.currentThread()
+                              .interrupt();
+                        throw e.getCause();
+                    }
+                }
+            }
+        }
+    }
+
+}
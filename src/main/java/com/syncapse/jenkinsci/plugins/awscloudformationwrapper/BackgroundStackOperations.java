@@ -0,0 +1,230 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.model.Result;
+import hudson.model.AbstractBuild;
+import hudson.util.LogTaskListener;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Creates or deploys stacks for builds that do not wait for them, so that the build goes on with its next steps and
+ * gives its executor back as soon as it is done with them, instead of when the stacks are. Also deletes the stacks of
+ * aborted builds, for the same reason.
+ *
+ * Once a stack reaches a terminal status, its timings are added to the build and, if it failed while the build is still
+ * running, the build is marked as failed. A stack failing after its build completed can only be logged, as the result of
+ * a completed build is final.
+ */
+final class BackgroundStackOperations {
+
+    private static final Logger LOGGER = Logger.getLogger(BackgroundStackOperations.class.getName());
+
+    private static final BackgroundStackOperations INSTANCE = new BackgroundStackOperations(Executors.newSingleThreadExecutor(new StackWaitScheduler.DaemonThreadFactory(
+            "CloudFormation background stack operation")));
+
+    private final ExecutorService executor;
+
+    /**
+     * @param executor asks for the operations, which the {@link StackWaitScheduler} then polls, and records their
+     *        results in the builds. Asking may wait for throttled requests, so this must not be one of its threads.
+     */
+    BackgroundStackOperations(final ExecutorService executor) {
+
+        this.executor = executor;
+    }
+
+    static BackgroundStackOperations get() {
+
+        return INSTANCE;
+    }
+
+    /**
+     * @return a logger writing to the given log of the build while it runs, and to {@link #LOGGER} once it is over, as
+     *         the log of a completed build is closed. Stacks created in the background log to it, since they may
+     *         outlive their build.
+     */
+    static PrintStream buildLogger(final AbstractBuild<?, ?> build, final PrintStream buildLog) {
+
+        return new PrintStream(new BuildLog(build, buildLog), true);
+    }
+
+    /**
+     * Start creating or deploying the given stack for the given build, without waiting for it.
+     */
+    Future<?> submit(final AbstractBuild<?, ?> build, final CloudFormation cloudFormation, final DeployMode deployMode, final PrintStream logger) {
+
+        logger.println("Creating stack " + cloudFormation.getExpandedStackName()
+                       + " in the background. Its outputs are not available to the rest of the build.");
+        return executor.submit(new Operation(build, cloudFormation, deployMode, logger));
+    }
+
+    /**
+     * Delete the given stack without waiting for it, e.g. once its build was aborted. The deletion is logged to
+     * {@link #LOGGER}, as it outlives the build.
+     *
+     * @return a future completed with true once the stack is deleted, false if it failed to be.
+     */
+    ListenableFuture<Boolean> delete(final CloudFormation cloudFormation) {
+
+        final CloudFormation detached = cloudFormation.copy(cloudFormation.getExpandedStackName(), new LogTaskListener(LOGGER, Level.INFO).getLogger());
+        detached.adopt(cloudFormation.getStackId(), cloudFormation.getStackOutputs());
+        final SettableFuture<Boolean> deleted = SettableFuture.create();
+        executor.execute(new Deletion(detached, deleted));
+        return deleted;
+    }
+
+    private static final class Deletion implements Runnable {
+
+        private final CloudFormation cloudFormation;
+        private final SettableFuture<Boolean> result;
+
+        Deletion(final CloudFormation cloudFormation, final SettableFuture<Boolean> result) {
+
+            this.cloudFormation = cloudFormation;
+            this.result = result;
+        }
+
+        public void run() {
+
+            ListenableFuture<Boolean> deletion;
+            try {
+                deletion = cloudFormation.startDelete();
+            } catch (final RuntimeException e) {
+                deletion = Futures.immediateFailedFuture(e);
+            }
+            Futures.addCallback(deletion, new FutureCallback<Boolean>() {
+
+                public void onSuccess(final Boolean deleted) {
+
+                    if (!deleted) {
+                        LOGGER.warning("Failed to delete stack " + cloudFormation.getExpandedStackName() + " in the background");
+                    }
+                    result.set(deleted);
+                }
+
+                public void onFailure(final Throwable t) {
+
+                    LOGGER.log(Level.WARNING, "Failed to delete stack " + cloudFormation.getExpandedStackName() + " in the background", t);
+                    result.set(Boolean.FALSE);
+                }
+            });
+        }
+    }
+
+    private final class Operation implements Runnable, FutureCallback<Boolean> {
+
+        private final AbstractBuild<?, ?> build;
+        private final CloudFormation cloudFormation;
+        private final DeployMode deployMode;
+        private final PrintStream logger;
+
+        Operation(final AbstractBuild<?, ?> build, final CloudFormation cloudFormation, final DeployMode deployMode, final PrintStream logger) {
+
+            this.build = build;
+            this.cloudFormation = cloudFormation;
+            this.deployMode = deployMode;
+            this.logger = logger;
+        }
+
+        public void run() {
+
+            ListenableFuture<Boolean> operation;
+            try {
+                operation = deployMode == DeployMode.CREATE_OR_UPDATE ? cloudFormation.startDeploy(executor) : cloudFormation.startCreate();
+            } catch (final RuntimeException e) {
+                operation = Futures.immediateFailedFuture(e);
+            }
+            // Recorded off the threads of the StackWaitScheduler, as saving the build writes to disk.
+            Futures.addCallback(operation, this, executor);
+        }
+
+        public void onSuccess(final Boolean deployed) {
+
+            finished(deployed);
+        }
+
+        public void onFailure(final Throwable t) {
+
+            LOGGER.log(Level.WARNING, "Failed to create stack " + cloudFormation.getExpandedStackName() + " in the background", t);
+            finished(false);
+        }
+
+        private void finished(final boolean deployed) {
+
+            StackTimingAction.record(build, cloudFormation);
+            if (deployed) {
+                StackOutputsAction.record(build, cloudFormation);
+            }
+
+            if (build.isBuilding()) {
+                if (!deployed) {
+                    logger.println("Stack " + cloudFormation.getExpandedStackName() + " created in the background failed, failing the build.");
+                    build.setResult(Result.FAILURE);
+                }
+                return;
+            }
+            if (!deployed) {
+                LOGGER.warning("Stack " + cloudFormation.getExpandedStackName() + " created in the background for " + build.getFullDisplayName()
+                               + " failed after the build completed.");
+            }
+            try {
+                // The build was saved before the timings and outputs were added.
+                build.save();
+            } catch (final IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to save the stack timings of " + build.getFullDisplayName(), e);
+            }
+        }
+    }
+
+    /**
+     * @see BackgroundStackOperations#buildLogger(AbstractBuild, PrintStream)
+     */
+    private static final class BuildLog extends OutputStream {
+
+        private final AbstractBuild<?, ?> build;
+        private final PrintStream buildLog;
+        private final PrintStream afterwards = new LogTaskListener(LOGGER, Level.INFO).getLogger();
+
+        BuildLog(final AbstractBuild<?, ?> build, final PrintStream buildLog) {
+
+            this.build = build;
+            this.buildLog = buildLog;
+        }
+
+        private PrintStream current() {
+
+            return build.isBuilding() ? buildLog : afterwards;
+        }
+
+        @Override
+        public void write(final int b) {
+
+            current().write(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+
+            current().write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+
+            current().flush();
+        }
+    }
+
+}
@@ -4,40 +4,50 @@
 package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
 
 import hudson.EnvVars;
+import hudson.util.Secret;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
-import com.amazonaws.auth.AWSCredentials;
-import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.cloudformation.AmazonCloudFormation;
-import com.amazonaws.services.cloudformation.AmazonCloudFormationAsyncClient;
-import com.amazonaws.services.cloudformation.AmazonCloudFormationClient;
 import com.amazonaws.services.cloudformation.model.CreateStackRequest;
 import com.amazonaws.services.cloudformation.model.DeleteStackRequest;
-import com.amazonaws.services.cloudformation.model.DescribeStackEventsRequest;
-import com.amazonaws.services.cloudformation.model.DescribeStackEventsResult;
 import com.amazonaws.services.cloudformation.model.DescribeStacksRequest;
 import com.amazonaws.services.cloudformation.model.DescribeStacksResult;
-import com.amazonaws.services.cloudformation.model.ListStacksRequest;
-import com.amazonaws.services.cloudformation.model.ListStacksResult;
+import com.amazonaws.services.cloudformation.model.GetTemplateRequest;
 import com.amazonaws.services.cloudformation.model.Output;
 import com.amazonaws.services.cloudformation.model.Parameter;
 import com.amazonaws.services.cloudformation.model.Stack;
-import com.amazonaws.services.cloudformation.model.StackEvent;
 import com.amazonaws.services.cloudformation.model.StackStatus;
 import com.amazonaws.services.cloudformation.model.StackSummary;
+import com.amazonaws.services.cloudformation.model.UpdateStackRequest;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 /**
  * Class for interacting with CloudFormation stacks, including creating them, deleting them and getting the outputs.
@@ -47,12 +57,34 @@ import com.google.common.collect.Lists;
  */
 public class CloudFormation {
 
-    private AmazonCloudFormationClient client;
+    private static final Logger LOGGER = Logger.getLogger(CloudFormation.class.getName());
+
     /**
      * Minimum time to wait before considering the creation of the stack a failure. Default value is 5 minutes. (300
      * seconds)
      */
     public static final long MIN_TIMEOUT = 300;
+
+    private static final AtomicLong SLEPT_MILLIS = new AtomicLong();
+
+    /**
+     * Seconds to wait for the deletion of a stack whose creation was aborted, with {@link AbortPolicy#DELETE_AND_WAIT}.
+     */
+    private static final long ABORT_WAIT = Long.getLong(CloudFormation.class.getName() + ".abortWait", 60);
+
+    /**
+     * Seconds between two reads of the events of a stack polled while neither its status nor its last update time
+     * changed.
+     */
+    private static final long EVENT_INTERVAL = TimeUnit.SECONDS.toMillis(Long.getLong(CloudFormation.class.getName() + ".eventInterval", 30));
+
+    private static final Set<String> CREATE_IN_PROGRESS_STATUSES = Collections.singleton(StackStatus.CREATE_IN_PROGRESS.toString());
+
+    private static final Set<String> UPDATE_IN_PROGRESS_STATUSES = new HashSet<String>(Arrays.asList(StackStatus.UPDATE_IN_PROGRESS.toString(),
+                                                                                                     StackStatus.UPDATE_COMPLETE_CLEANUP_IN_PROGRESS.toString(),
+                                                                                                     StackStatus.UPDATE_ROLLBACK_IN_PROGRESS.toString(),
+                                                                                                     StackStatus.UPDATE_ROLLBACK_COMPLETE_CLEANUP_IN_PROGRESS.toString()));
+
     private String stackName;
     private final String outputPrefixName;
     private final String recipe;
@@ -61,15 +93,44 @@ public class CloudFormation {
     private final String awsAccessKey;
     private final String awsSecretKey;
     private final PrintStream logger;
-    private final AmazonCloudFormation amazonClient;
-    private Stack stack;
-    private long waitBetweenAttempts;
+    private volatile Stack stack;
+    /**
+     * The unique id of the stack, known once it is created or first described. Unlike the name, it keeps identifying
+     * the stack after it is deleted, and describing by id only returns that stack.
+     */
+    private volatile String stackId;
+    private StackEventTailer eventTailer;
+    private PollingStrategy pollingStrategy;
     private final boolean autoDeleteStack;
+    /**
+     * Whether to reuse the stack of the {@link StackReuseCache} created the same way, and to hand over a created stack
+     * to it.
+     */
+    private boolean reuse;
+    /**
+     * The build reusing or creating the stack, which the {@link StackReuseCache} does not delete the stack under.
+     */
+    private String reuseUser;
+    /**
+     * Whether the stack belongs to the {@link StackReuseCache}, which deletes it when it is evicted.
+     */
+    private volatile boolean reused;
+    /**
+     * Whether the stack was leased from a {@link WarmStackPool}, which it goes back to or is deleted by its lessee.
+     */
+    private volatile boolean leased;
     private final EnvVars envVars;
     private final Region awsRegion;
     private final Boolean isPrefixSelected;
     private Map<String, String> outputs;
     private long sleep = 0;
+    private final ApiRetrier retrier = new ApiRetrier();
+    private AbortPolicy abortPolicy = AbortPolicy.getDefault();
+    /**
+     * The operation in progress, counting the API calls made.
+     */
+    private volatile StackTiming timing;
+    private final List<StackTiming> timings = new ArrayList<StackTiming>();
 
     /**
      * @param logger a logger to write progress information.
@@ -97,12 +158,11 @@ public class CloudFormation {
 
         if (timeout == -12345) {
             this.timeout = 0; // Faster testing.
-            this.waitBetweenAttempts = 0;
+            this.pollingStrategy = FixedPollingStrategy.immediate();
         } else {
             this.timeout = timeout > MIN_TIMEOUT ? timeout : MIN_TIMEOUT;
-            this.waitBetweenAttempts = 10; // query every 10s
+            this.pollingStrategy = PollingStrategy.getDefault();
         }
-        this.amazonClient = getAWSClient();
         this.autoDeleteStack = autoDeleteStack;
         this.envVars = envVars;
 
@@ -123,12 +183,11 @@ public class CloudFormation {
         this.isPrefixSelected = isPrefixSelected;
         if (timeout == -12345) {
             this.timeout = 0; // Faster testing.
-            this.waitBetweenAttempts = 0;
+            this.pollingStrategy = FixedPollingStrategy.immediate();
         } else {
             this.timeout = timeout > MIN_TIMEOUT ? timeout : MIN_TIMEOUT;
-            this.waitBetweenAttempts = 10; // query every 10s
+            this.pollingStrategy = PollingStrategy.getDefault();
         }
-        this.amazonClient = getAWSClient();
         this.autoDeleteStack = false;
         this.envVars = envVars;
         this.sleep = sleep;
@@ -151,25 +210,255 @@ public class CloudFormation {
      */
     public boolean getAutoDeleteStack() {
 
-        return autoDeleteStack;
+        return autoDeleteStack && !reused;
+    }
+
+    /**
+     * @param reuse whether to reuse an existing stack created from the same template with the same parameters instead
+     *        of creating a new one. Stacks created this way are left for other builds to reuse.
+     * @param buildId the {@link hudson.model.Run#getExternalizableId() id} of the build, which uses the stack until it
+     *        completes.
+     */
+    public void setReuse(final boolean reuse, final String buildId) {
+
+        this.reuse = reuse;
+        this.reuseUser = buildId;
     }
 
     /**
-     * @return
+     * @param pollingStrategy decides how often the stack status is checked while waiting for it to be created or
+     *        deleted.
+     */
+    public void setPollingStrategy(final PollingStrategy pollingStrategy) {
+
+        if (pollingStrategy != null) {
+            this.pollingStrategy = pollingStrategy;
+        }
+    }
+
+    /**
+     * @param abortPolicy what to do with the stack when interrupted while creating it.
+     */
+    public void setAbortPolicy(final AbortPolicy abortPolicy) {
+
+        if (abortPolicy != null) {
+            this.abortPolicy = abortPolicy;
+        }
+    }
+
+    /**
+     * @return a digest of everything that makes the stacks created by this object identical: the template, the
+     *         parameters, the region and the account.
+     */
+    String getFingerprint() {
+
+        final StringBuilder content = new StringBuilder();
+        content.append(TemplateCache.digest(recipe))
+               .append('\n')
+               .append(awsRegion.name())
+               .append('\n')
+               .append(awsAccessKey);
+        for (final Entry<String, String> parameter : new TreeMap<String, String>(getParametersMap()).entrySet()) {
+            content.append('\n')
+                   .append(parameter.getKey())
+                   .append('=')
+                   .append(parameter.getValue());
+        }
+        return TemplateCache.digest(content.toString());
+    }
+
+    /**
+     * @return an object creating the same stack as this one under another name, deleted automatically.
+     */
+    CloudFormation copy(final String stackName, final PrintStream logger) {
+
+        final CloudFormation copy = new CloudFormation(logger, stackName, outputPrefixName, recipe, getParametersMap(), timeout, awsAccessKey, awsSecretKey,
+                                                       awsRegion, true, new EnvVars(), false);
+        copy.setPollingStrategy(pollingStrategy);
+        return copy;
+    }
+
+    /**
+     * Make this object stand for a stack that was created elsewhere, e.g. by a {@link WarmStackPool}.
+     *
+     * @param stackId the id of the existing stack.
+     * @param stackOutputs its outputs, as returned by {@link #getStackOutputs()}.
+     */
+    void adopt(final String stackId, final Map<String, String> stackOutputs) {
+
+        this.stackId = stackId;
+        this.outputs = new HashMap<String, String>(stackOutputs);
+    }
+
+    /**
+     * Make this object stand for a stack leased from a {@link WarmStackPool}.
+     *
+     * @see #adopt(String, Map)
+     */
+    void adoptLeased(final String stackId, final Map<String, String> stackOutputs) {
+
+        adopt(stackId, stackOutputs);
+        leased = true;
+    }
+
+    /**
+     * @return true if the stack belongs to the {@link StackReuseCache} or was leased from a {@link WarmStackPool}, in
+     *         which case only they may delete it.
+     */
+    boolean isShared() {
+
+        return reused || leased;
+    }
+
+    /**
+     * @return what the {@link StackLedger} needs to know to delete this stack, for the given build and operation.
+     */
+    StackLedger.Entry ledgerEntry(final String buildId, final String operation) {
+
+        return new StackLedger.Entry(buildId, getExpandedStackName(), stackId, operation, awsAccessKey, Secret.fromString(awsSecretKey), awsRegion);
+    }
+
+    /**
+     * Ask for the deletion of the given stack without waiting for it, e.g. when Jenkins is shutting down.
+     */
+    void requestDeletion(final String stackId) {
+
+        getRetryingClient().deleteStack(new DeleteStackRequest().withStackName(stackId));
+        StackSummaryIndex.invalidate(awsAccessKey, awsRegion);
+        StackReuseCache.get()
+                       .invalidate(stackId);
+    }
+
+    /**
+     * @return the id of the stack, null if it was neither created nor described yet.
+     */
+    String getStackId() {
+
+        return stackId;
+    }
+
+    /**
+     * @return the status of the stack when it was last described, null if it was not.
+     */
+    String getStackStatus() {
+
+        final Stack described = stack;
+        return described != null ? described.getStackStatus() : null;
+    }
+
+    /**
+     * @return the outputs of the created stack, without the prefixes added by {@link #getOutputs()}.
+     */
+    Map<String, String> getStackOutputs() {
+
+        return outputs != null ? outputs : Collections.<String, String> emptyMap();
+    }
+
+    /**
+     * @return true if the stack was deleted or did not exist. False otherwise.
      */
     public boolean delete() {
 
+        final Future<Boolean> deletion = startDelete();
+        try {
+            return StackWaitScheduler.await(deletion);
+        } catch (final InterruptedException e) {
+            // The deletion was asked for already, AWS goes on with it.
+            deletion.cancel(false);
+            logger.println("Interrupted while deleting stack: " + getExpandedStackName() + ". It is still being deleted.");
+            Thread.currentThread()
+                  .interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Ask for the stack to be deleted, without waiting for it. The stack is then polled by the
+     * {@link StackWaitScheduler}, whose threads complete the returned future: its listeners must not wait.
+     *
+     * @return a future completed with true if the stack was deleted or did not exist, false otherwise. Cancelling the
+     *         future stops polling the stack, which AWS goes on deleting.
+     */
+    ListenableFuture<Boolean> startDelete() {
+
+        final SettableFuture<Boolean> result = SettableFuture.create();
+        final boolean requested;
+        try {
+            requested = requestDelete();
+        } catch (final AmazonClientException e) {
+            operationFailed("delete", e, result);
+            return result;
+        }
+        if (!requested) {
+            finish(true, result);
+            return result;
+        }
+
+        final ListenableFuture<Boolean> deletion = StackWaitScheduler.get()
+                                                                     .submit(new DeletionPoll());
+        Futures.addCallback(deletion, new FutureCallback<Boolean>() {
+
+            public void onSuccess(final Boolean deleted) {
+
+                stackDeleted(deleted, result);
+            }
+
+            public void onFailure(final Throwable t) {
+
+                operationFailed("delete", t, result);
+            }
+        });
+        stopPollingOnCancel(result, deletion);
+        return result;
+    }
+
+    /**
+     * @return true if the deletion was asked for, false if there is no stack to delete.
+     */
+    private boolean requestDelete() {
+
         if (isPrefixSelected) {
             stackName = getOldestStackNameWithPrefix();
+            if (isHeldElsewhere(getExpandedStackName())) {
+                logger.println("Not deleting stack " + getExpandedStackName() + ", which belongs to the reuse cache or a warm pool.");
+                return false;
+            }
         }
+        final StackTiming started = startTiming("delete");
         logger.println("Deleting Cloud Formation stack: " + getExpandedStackName());
+        if (stackId == null && describeStack() == null) {
+            logger.println("Cloud Formation stack: " + getExpandedStackName() + " does not exist.");
+            return false;
+        }
+        eventTailer = new StackEventTailer(logger, new StackEventAnalyzer(getExpandedStackName()));
+        try {
+            eventTailer.skipExisting(getRetryingClient(), getStackIdentifier());
+        } catch (final AmazonClientException e) {
+            LOGGER.log(Level.FINE, "Failed to get the events of stack " + getExpandedStackName(), e);
+        }
         final DeleteStackRequest deleteStackRequest = new DeleteStackRequest();
-        deleteStackRequest.withStackName(getExpandedStackName());
-        amazonClient.deleteStack(deleteStackRequest);
-        final boolean result = waitForStackToBeDeleted();
+        deleteStackRequest.withStackName(getStackIdentifier());
+        final long requestStart = System.currentTimeMillis();
+        getRetryingClient().deleteStack(deleteStackRequest);
+        started.requested(System.currentTimeMillis() - requestStart);
+        StackSummaryIndex.invalidate(awsAccessKey, awsRegion);
+        // Deleted e.g. by prefix, the stack may be one other builds would reuse.
+        StackReuseCache.get()
+                       .invalidate(stackId);
+        return true;
+    }
 
-        logger.println("Cloud Formation stack: " + getExpandedStackName() + (result ? " deleted successfully" : " failed deleting."));
-        return result;
+    /**
+     * Runs on a thread of the {@link StackWaitScheduler}, see {@link #stackCreated(Stack, SettableFuture)}.
+     */
+    private void stackDeleted(final boolean deleted, final SettableFuture<Boolean> result) {
+
+        try {
+            printStackEvents();
+            logger.println("Cloud Formation stack: " + getExpandedStackName() + (deleted ? " deleted successfully" : " failed deleting."));
+        } finally {
+            finish(deleted, result);
+        }
     }
 
     /**
@@ -181,42 +470,543 @@ public class CloudFormation {
      */
     public boolean create() throws TimeoutException, InterruptedException {
 
+        final Future<Boolean> creation = startCreate();
+        try {
+            return StackWaitScheduler.await(creation);
+        } catch (final InterruptedException e) {
+            creation.cancel(false);
+            logger.println("Interrupted while creating stack: " + getExpandedStackName());
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Ask for the stack to be created, without waiting for it. The stack is then polled by the
+     * {@link StackWaitScheduler}, whose threads complete the returned future: its listeners must not wait.
+     *
+     * @return a future completed with true if the stack was created successfully, false otherwise, or with a
+     *         {@link TimeoutException} if creating the stack takes longer than the timeout. Cancelling the future stops
+     *         polling the stack, which is left as it is.
+     */
+    ListenableFuture<Boolean> startCreate() {
+
+        final SettableFuture<Boolean> result = SettableFuture.create();
+
+        if (reuse && reuseCachedStack()) {
+            result.set(Boolean.TRUE);
+            return result;
+        }
+
         logger.println("Creating Cloud Formation stack: " + getExpandedStackName());
 
         final CreateStackRequest request = createStackRequest();
+        final StackTiming started = startTiming("create");
 
         try {
-            amazonClient.createStack(request);
+            eventTailer = new StackEventTailer(logger, new StackEventAnalyzer(getExpandedStackName()));
+            final long requestStart = System.currentTimeMillis();
+            stackId = getRetryingClient().createStack(request)
+                                          .getStackId();
+            started.requested(System.currentTimeMillis() - requestStart);
+        } catch (final AmazonClientException e) {
+            operationFailed("create", e, result);
+            return result;
+        }
 
-            stack = waitForStackToBeCreated();
+        final ListenableFuture<Stack> creation = StackWaitScheduler.get()
+                                                                   .submit(new OperationPoll("created", CREATE_IN_PROGRESS_STATUSES));
+        Futures.addCallback(creation, new FutureCallback<Stack>() {
 
-            final StackStatus status = getStackStatus(stack.getStackStatus());
+            public void onSuccess(final Stack created) {
+
+                stackCreated(created, result);
+            }
+
+            public void onFailure(final Throwable t) {
+
+                operationFailed("create", t, result);
+            }
+        });
+        stopPollingOnCancel(result, creation);
+        return result;
+    }
+
+    /**
+     * Stop polling the stack once the operation is cancelled.
+     */
+    private static void stopPollingOnCancel(final ListenableFuture<Boolean> operation, final Future<?> polling) {
 
-            final Map<String, String> stackOutput = new HashMap<String, String>();
-            if (isStackCreationSuccessful(status)) {
-                final List<Output> outputs = stack.getOutputs();
+        operation.addListener(new Runnable() {
 
-                for (final Output output : outputs) {
-                    stackOutput.put(output.getOutputKey(), output.getOutputValue());
-                    stackOutput.put("stack_id", stack.getStackId());
+            public void run() {
+
+                if (operation.isCancelled()) {
+                    polling.cancel(false);
                 }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
 
-                logger.println("Successfully created stack: " + getExpandedStackName());
-                this.outputs = stackOutput;
-                Thread.sleep(TimeUnit.SECONDS.toMillis(sleep));
-                return true;
-            } else {
+    /**
+     * Runs on a thread of the {@link StackWaitScheduler}. Whatever happens, the creation must be finished, as the build
+     * waits for it.
+     */
+    private void stackCreated(final Stack created, final SettableFuture<Boolean> result) {
+
+        boolean successful = false;
+        boolean sleeping = false;
+        try {
+            stack = created;
+            printStackEvents();
+
+            final StackStatus status = getStackStatus(stack.getStackStatus());
+
+            if (!isStackCreationSuccessful(status)) {
                 logger.println("Failed to create stack: " + getExpandedStackName() + ". Reason: " + stack.getStackStatusReason());
-                return false;
+                return;
+            }
+
+            successful = true;
+            logger.println("Successfully created stack: " + getExpandedStackName());
+            this.outputs = readOutputs(stack);
+            if (reuse) {
+                reused = StackReuseCache.get()
+                                        .put(getFingerprint(), new StackReuseCache.Entry(getExpandedStackName(), stackId, outputs, awsAccessKey,
+                                                                                         Secret.fromString(awsSecretKey), awsRegion), reuseUser);
+            }
+            if (sleep > 0) {
+                sleepAfterOperation(result);
+                sleeping = true;
+            }
+        } finally {
+            if (!sleeping) {
+                finish(successful, result);
+            }
+        }
+    }
+
+    /**
+     * Finish the operation once the configured time after the stack is ready elapsed, see
+     * {@link #sleepAfterOperation()}.
+     */
+    private void sleepAfterOperation(final SettableFuture<Boolean> result) {
+
+        Futures.addCallback(StackWaitScheduler.get()
+                                              .submit(new SleepPoll()), new FutureCallback<Long>() {
+
+            public void onSuccess(final Long slept) {
+
+                recordSleep(slept);
+                finish(true, result);
+            }
+
+            public void onFailure(final Throwable t) {
+
+                finish(true, result);
+            }
+        });
+    }
+
+    /**
+     * @param action what was done to the stack, for the message.
+     */
+    private void operationFailed(final String action, final Throwable t, final SettableFuture<Boolean> result) {
+
+        if (t instanceof AmazonServiceException) {
+            logger.println("Failed to " + action + " stack: " + getExpandedStackName() + ". Reason: " + detailedError((AmazonServiceException) t));
+        } else if (t instanceof AmazonClientException) {
+            logger.println("Failed to " + action + " stack: " + getExpandedStackName() + ". Error was: " + t.getCause());
+        } else {
+            finishTiming(false);
+            printRetrySummary();
+            result.setException(t);
+            return;
+        }
+        finish(false, result);
+    }
+
+    private void finish(final boolean successful, final SettableFuture<Boolean> result) {
+
+        finishTiming(successful);
+        printRetrySummary();
+        result.set(successful);
+    }
+
+    /**
+     * Apply the {@link AbortPolicy} to the stack, e.g. when its build is aborted. Stacks belonging to the reuse cache are
+     * left to it.
+     *
+     * @return a future completed with true once the stack is left or deleted, false if it failed to be deleted or is
+     *         still being deleted when no longer waited for.
+     */
+    ListenableFuture<Boolean> abort() {
+
+        if (stackId == null || reused) {
+            return Futures.immediateFuture(Boolean.TRUE);
+        }
+        switch (abortPolicy) {
+        case LEAVE:
+            logger.println("Leaving stack " + getExpandedStackName() + " as it is. Check in your amazon account to ensure you are not charged for it.");
+            return Futures.immediateFuture(Boolean.TRUE);
+        case DELETE_AND_WAIT:
+            return Futures.immediateFuture(deleteWithin(ABORT_WAIT));
+        default:
+            logger.println("Deleting stack " + getExpandedStackName() + " in the background.");
+            return BackgroundStackOperations.get()
+                                            .delete(this);
+        }
+    }
+
+    /**
+     * Delete the stack, giving up waiting for it after the given number of seconds.
+     *
+     * @return true if the stack was deleted in time.
+     */
+    private boolean deleteWithin(final long seconds) {
+
+        logger.println("Deleting stack " + getExpandedStackName() + ", waiting up to " + seconds + " seconds for it.");
+        // The wait must not end at once because of the interruption being handled.
+        final boolean interrupted = Thread.interrupted();
+        try {
+            requestDeletion(stackId);
+            final Future<Boolean> deletion = StackWaitScheduler.get()
+                                                               .submit(new DeletionPoll());
+            try {
+                final boolean deleted = deletion.get(seconds, TimeUnit.SECONDS);
+                logger.println("Cloud Formation stack: " + getExpandedStackName() + (deleted ? " deleted successfully" : " failed deleting."));
+                return deleted;
+            } catch (final java.util.concurrent.TimeoutException e) {
+                deletion.cancel(false);
+                logger.println("Stack " + getExpandedStackName() + " is still being deleted, no longer waiting for it.");
+            } catch (final ExecutionException e) {
+                logger.println("Failed to delete stack: " + getExpandedStackName() + ". Error was: " + e.getCause());
+            } catch (final InterruptedException e) {
+                deletion.cancel(false);
+                logger.println("Stack " + getExpandedStackName() + " is still being deleted, no longer waiting for it.");
+            }
+        } catch (final AmazonClientException e) {
+            logger.println("Failed to delete stack: " + getExpandedStackName() + ". Error was: " + e.getMessage());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread()
+                      .interrupt();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stand for the stack of the reuse cache created the same way, if there is one. Its outputs come from the cache, so
+     * this does not call AWS.
+     *
+     * @return true if a stack is reused.
+     */
+    private boolean reuseCachedStack() {
+
+        final StackReuseCache.Entry entry = StackReuseCache.get()
+                                                           .lookup(getFingerprint(), reuseUser);
+        if (entry == null) {
+            return false;
+        }
+        logger.println("Reusing Cloud Formation stack: " + entry.getStackName() + " for stack: " + getExpandedStackName());
+        adopt(entry.getStackId(), entry.getStackOutputs());
+        reused = true;
+        return true;
+    }
+
+    /**
+     * Create the stack if it does not exist. Otherwise update it in place, unless its template and parameters are
+     * already the given ones, in which case only its outputs are read.
+     *
+     * @return True if the stack was created, updated or found up to date. False otherwise.
+     *
+     * @throws TimeoutException if creating or updating the stack takes longer than the timeout value passed during
+     *         creation.
+     */
+    public boolean deploy() throws TimeoutException, InterruptedException {
+
+        boolean deployed = false;
+        try {
+            deployed = doDeploy();
+            return deployed;
+        } finally {
+            finishTiming(deployed);
+            printRetrySummary();
+        }
+    }
+
+    private boolean doDeploy() throws TimeoutException, InterruptedException {
+
+        final Stack existing;
+        try {
+            existing = describeStack();
+        } catch (final AmazonServiceException e) {
+            logger.println("Failed to deploy stack: " + getExpandedStackName() + ". Reason: " + detailedError(e));
+            return false;
+        } catch (final AmazonClientException e) {
+            logger.println("Failed to deploy stack: " + getExpandedStackName() + ". Error was: " + e.getCause());
+            return false;
+        }
+
+        if (existing == null) {
+            return create();
+        }
+
+        final String status = existing.getStackStatus();
+        if (StackStatus.ROLLBACK_COMPLETE.toString()
+                                         .equals(status)) {
+            // A stack whose creation failed cannot be updated.
+            logger.println("Stack " + getExpandedStackName() + " failed to be created before, recreating it.");
+            stackId = null;
+            return delete() && create();
+        }
+        if (status.endsWith("_IN_PROGRESS")) {
+            logger.println("Failed to deploy stack: " + getExpandedStackName() + ". Another operation is in progress: " + status);
+            return false;
+        }
+
+        try {
+            if (isUpToDate(existing)) {
+                logger.println("Stack " + getExpandedStackName() + " is up to date.");
+                stack = existing;
+                this.outputs = readOutputs(existing);
+                return true;
             }
+            return update();
         } catch (final AmazonServiceException e) {
-            logger.println("Failed to create stack: " + getExpandedStackName() + ". Reason: " + detailedError(e));
+            logger.println("Failed to update stack: " + getExpandedStackName() + ". Reason: " + detailedError(e));
             return false;
         } catch (final AmazonClientException e) {
-            logger.println("Failed to create stack: " + getExpandedStackName() + ". Error was: " + e.getCause());
+            logger.println("Failed to update stack: " + getExpandedStackName() + ". Error was: " + e.getCause());
             return false;
         }
+    }
+
+    /**
+     * Deploy the stack like {@link #deploy()}, without waiting for it. The stack is then polled by the
+     * {@link StackWaitScheduler}, whose threads complete the returned future: its listeners must not wait.
+     *
+     * @param requests asks for the creation of a stack whose failed version was deleted. Asking may wait for throttled
+     *        requests, so this must not be a thread of the {@link StackWaitScheduler}.
+     * @return a future completed with true if the stack was created, updated or found up to date, false otherwise, or
+     *         with a {@link TimeoutException} if creating or updating the stack takes longer than the timeout.
+     *         Cancelling the future stops polling the stack, which is left as it is.
+     */
+    ListenableFuture<Boolean> startDeploy(final Executor requests) {
+
+        final SettableFuture<Boolean> result = SettableFuture.create();
+        final Stack existing;
+        try {
+            existing = describeStack();
+        } catch (final AmazonClientException e) {
+            operationFailed("deploy", e, result);
+            return result;
+        }
+
+        if (existing == null) {
+            return startCreate();
+        }
+
+        final String status = existing.getStackStatus();
+        if (StackStatus.ROLLBACK_COMPLETE.toString()
+                                         .equals(status)) {
+            // A stack whose creation failed cannot be updated.
+            logger.println("Stack " + getExpandedStackName() + " failed to be created before, recreating it.");
+            stackId = null;
+            return Futures.transform(startDelete(), new AsyncFunction<Boolean, Boolean>() {
+
+                public ListenableFuture<Boolean> apply(final Boolean deleted) {
+
+                    return deleted ? startCreate() : Futures.immediateFuture(Boolean.FALSE);
+                }
+            }, requests);
+        }
+        if (status.endsWith("_IN_PROGRESS")) {
+            logger.println("Failed to deploy stack: " + getExpandedStackName() + ". Another operation is in progress: " + status);
+            finish(false, result);
+            return result;
+        }
 
+        try {
+            if (isUpToDate(existing)) {
+                logger.println("Stack " + getExpandedStackName() + " is up to date.");
+                stack = existing;
+                this.outputs = readOutputs(existing);
+                finish(true, result);
+            } else {
+                startUpdate(result);
+            }
+        } catch (final AmazonClientException e) {
+            operationFailed("update", e, result);
+        }
+        return result;
+    }
+
+    private void startUpdate(final SettableFuture<Boolean> result) {
+
+        if (!requestUpdate()) {
+            finish(true, result);
+            return;
+        }
+
+        final ListenableFuture<Stack> update = StackWaitScheduler.get()
+                                                                 .submit(new OperationPoll("updated", UPDATE_IN_PROGRESS_STATUSES));
+        Futures.addCallback(update, new FutureCallback<Stack>() {
+
+            public void onSuccess(final Stack updated) {
+
+                boolean successful = false;
+                boolean sleeping = false;
+                try {
+                    stack = updated;
+                    successful = stackUpdated();
+                    if (successful && sleep > 0) {
+                        sleepAfterOperation(result);
+                        sleeping = true;
+                    }
+                } finally {
+                    if (!sleeping) {
+                        finish(successful, result);
+                    }
+                }
+            }
+
+            public void onFailure(final Throwable t) {
+
+                operationFailed("update", t, result);
+            }
+        });
+        stopPollingOnCancel(result, update);
+    }
+
+    /**
+     * @return true if the stack was created from the same template and with the same parameters.
+     */
+    private boolean isUpToDate(final Stack existing) {
+
+        if (!getStackParameters(existing).equals(getParametersMap())) {
+            return false;
+        }
+        final String deployedTemplate = getRetryingClient().getTemplate(new GetTemplateRequest().withStackName(getStackIdentifier()))
+                                                            .getTemplateBody();
+        return deployedTemplate != null && TemplateCache.digest(deployedTemplate)
+                                                        .equals(TemplateCache.digest(recipe));
+    }
+
+    private boolean update() throws TimeoutException, InterruptedException {
+
+        if (!requestUpdate()) {
+            return true;
+        }
+
+        try {
+            stack = await(StackWaitScheduler.get()
+                                            .submit(new OperationPoll("updated", UPDATE_IN_PROGRESS_STATUSES)));
+        } catch (final InterruptedException e) {
+            // Deleting an existing stack is never right, and this client cannot cancel the update.
+            logger.println("Interrupted while updating stack: " + getExpandedStackName()
+                           + ". The update goes on, it can be cancelled from the AWS console.");
+            throw e;
+        }
+        if (!stackUpdated()) {
+            return false;
+        }
+        sleepAfterOperation();
+        return true;
+    }
+
+    /**
+     * @return true if the update was asked for, false if the stack is up to date already.
+     */
+    private boolean requestUpdate() {
+
+        logger.println("Updating Cloud Formation stack: " + getExpandedStackName());
+
+        final UpdateStackRequest request = new UpdateStackRequest().withStackName(getStackIdentifier())
+                                                                   .withParameters(parameters)
+                                                                   .withTemplateBody(recipe)
+                                                                   .withCapabilities("CAPABILITY_IAM");
+        final StackTiming started = startTiming("update");
+        eventTailer = new StackEventTailer(logger, new StackEventAnalyzer(getExpandedStackName()));
+        eventTailer.skipExisting(getRetryingClient(), getStackIdentifier());
+        try {
+            final long requestStart = System.currentTimeMillis();
+            getRetryingClient().updateStack(request);
+            started.requested(System.currentTimeMillis() - requestStart);
+            return true;
+        } catch (final AmazonServiceException e) {
+            if (e.getMessage() != null && e.getMessage()
+                                           .contains("No updates are to be performed")) {
+                logger.println("Stack " + getExpandedStackName() + " is up to date.");
+                stack = describeStack();
+                this.outputs = readOutputs(stack);
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if the polled {@link #stack} was updated successfully.
+     */
+    private boolean stackUpdated() {
+
+        printStackEvents();
+
+        if (StackStatus.UPDATE_COMPLETE.toString()
+                                       .equals(stack.getStackStatus())) {
+            logger.println("Successfully updated stack: " + getExpandedStackName());
+            this.outputs = readOutputs(stack);
+            return true;
+        }
+        logger.println("Failed to update stack: " + getExpandedStackName() + ". Reason: " + stack.getStackStatusReason());
+        return false;
+    }
+
+    /**
+     * Wait for the configured time after the stack is ready, e.g. for its instances to finish booting.
+     */
+    private void sleepAfterOperation() throws InterruptedException {
+
+        if (sleep <= 0) {
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        try {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(sleep));
+        } finally {
+            recordSleep(System.currentTimeMillis() - start);
+        }
+    }
+
+    private void recordSleep(final long slept) {
+
+        SLEPT_MILLIS.addAndGet(slept);
+        final StackTiming current = timing;
+        if (current != null) {
+            current.slept(slept);
+        }
+    }
+
+    /**
+     * @return the time all the stacks spent sleeping after being created or updated since Jenkins started.
+     */
+    static long getSleptMillis() {
+
+        return SLEPT_MILLIS.get();
+    }
+
+    private static Map<String, String> readOutputs(final Stack stack) {
+
+        final Map<String, String> stackOutput = new HashMap<String, String>();
+        if (stack.getOutputs() != null) {
+            for (final Output output : stack.getOutputs()) {
+                stackOutput.put(output.getOutputKey(), output.getOutputValue());
+                stackOutput.put("stack_id", stack.getStackId());
+            }
+        }
+        return stackOutput;
     }
 
     private String detailedError(final AmazonServiceException e) {
@@ -234,38 +1024,78 @@ public class CloudFormation {
         return message.toString();
     }
 
+    /**
+     * @return the client to call CloudFormation with. Clients are shared plugin wide, so this must be called for every
+     *         call rather than kept around.
+     */
     protected AmazonCloudFormation getAWSClient() {
 
-        final AWSCredentials credentials = new BasicAWSCredentials(this.awsAccessKey, this.awsSecretKey);
-        final AmazonCloudFormation amazonClient = new AmazonCloudFormationAsyncClient(credentials);
-        amazonClient.setEndpoint(awsRegion.endPoint);
-        return amazonClient;
+        return CloudFormationClients.get()
+                                    .getClient(awsAccessKey, awsSecretKey, awsRegion);
     }
 
-    private boolean waitForStackToBeDeleted() {
+    /**
+     * @return the client to call CloudFormation with, retrying the calls failing for a transient reason.
+     */
+    private AmazonCloudFormation getRetryingClient() {
 
-        while (true) {
+        final StackTiming current = timing;
+        return retrier.wrap(current != null ? current.meter(getAWSClient()) : getAWSClient());
+    }
 
-            stack = getStack(amazonClient.describeStacks());
+    private StackTiming startTiming(final String operation) {
 
-            if (stack == null) {
-                return true;
-            }
+        final StackTiming started = new StackTiming(getExpandedStackName(), operation);
+        synchronized (timings) {
+            timings.add(started);
+        }
+        timing = started;
+        return started;
+    }
 
-            final StackStatus stackStatus = getStackStatus(stack.getStackStatus());
+    private void finishTiming(final boolean successful) {
 
-            if (StackStatus.DELETE_COMPLETE == stackStatus) {
-                return true;
+        final StackTiming finished = timing;
+        if (finished != null) {
+            final StackEventTailer tailer = eventTailer;
+            if (tailer != null && tailer.getAnalyzer() != null) {
+                finished.setResources(tailer.getAnalyzer()
+                                            .report());
             }
+            finished.finished(successful);
+            timing = null;
+        }
+    }
 
-            if (StackStatus.DELETE_FAILED == stackStatus) {
-                return false;
-            }
+    private void countPoll() {
 
-            sleep();
+        final StackTiming current = timing;
+        if (current != null) {
+            current.polled();
+        }
+    }
 
+    /**
+     * @return the timings of the operations done on the stack since the last call.
+     */
+    List<StackTiming> takeTimings() {
+
+        synchronized (timings) {
+            final List<StackTiming> taken = new ArrayList<StackTiming>(timings);
+            timings.clear();
+            return taken;
         }
+    }
 
+    /**
+     * Print how many calls had to be retried during the operation, if any did.
+     */
+    private void printRetrySummary() {
+
+        final String summary = retrier.getSummary();
+        if (summary != null) {
+            logger.println(summary);
+        }
     }
 
     private List<Parameter> parameters(final Map<String, String> parameters) {
@@ -287,41 +1117,33 @@ public class CloudFormation {
         return result;
     }
 
-    private Stack waitForStackToBeCreated() throws TimeoutException {
+    /**
+     * Wait for a stack operation polled by the {@link StackWaitScheduler} to complete, stopping its polling if
+     * interrupted.
+     */
+    private <T> T await(final Future<T> future) throws InterruptedException {
 
-        final DescribeStacksRequest describeStacksRequest = new DescribeStacksRequest().withStackName(getExpandedStackName());
-        StackStatus status = StackStatus.CREATE_IN_PROGRESS;
-        Stack stack = null;
-        final long startTime = System.currentTimeMillis();
-        while (isStackCreationInProgress(status)) {
-            if (isTimeout(startTime)) {
-                throw new TimeoutException("Timed out waiting for stack to be created. (timeout=" + timeout + ")");
-            }
-            stack = getStack(amazonClient.describeStacks(describeStacksRequest));
-            status = getStackStatus(stack.getStackStatus());
-            if (isStackCreationInProgress(status)) {
-                sleep();
-            }
+        try {
+            return StackWaitScheduler.await(future);
+        } catch (final InterruptedException e) {
+            future.cancel(false);
+            throw e;
         }
-
-        printStackEvents();
-
-        return stack;
     }
 
+    /**
+     * Print the events that happened since the last call. Events are only informative, so failing to get them must not
+     * fail the operation.
+     */
     private void printStackEvents() {
 
-        final DescribeStackEventsRequest r = new DescribeStackEventsRequest();
-        r.withStackName(getExpandedStackName());
-        final DescribeStackEventsResult describeStackEvents = amazonClient.describeStackEvents(r);
-
-        final List<StackEvent> stackEvents = describeStackEvents.getStackEvents();
-        Collections.reverse(stackEvents);
-
-        for (final StackEvent event : stackEvents) {
-            logger.println(event.getEventId() + " - " + event.getResourceType() + " - " + event.getResourceStatus() + " - " + event.getResourceStatusReason());
+        try {
+            eventTailer.tail(getRetryingClient(), getStackIdentifier());
+        } catch (final AmazonClientException e) {
+            LOGGER.log(Level.FINE, "Failed to get the events of stack " + getExpandedStackName(), e);
+        } catch (final StackWaitScheduler.PollLater e) {
+            // Throttled, the events are printed by a later poll rather than delaying this one.
         }
-
     }
 
     public void printStackOutput() {
@@ -340,38 +1162,57 @@ public class CloudFormation {
         return timeout == 0 ? false : (System.currentTimeMillis() - startTime) > (timeout * 1000);
     }
 
-    private Stack getStack(final DescribeStacksResult result) {
+    /**
+     * @return the id of the stack if known, its name otherwise. Either can be used to refer to the stack in API calls.
+     */
+    private String getStackIdentifier() {
 
-        for (final Stack aStack : result.getStacks()) {
-            if (getExpandedStackName().equals(aStack.getStackName())) {
-                return aStack;
-            }
-        }
+        return stackId != null ? stackId : getExpandedStackName();
+    }
 
-        return null;
+    /**
+     * Describe this stack only, remembering its id.
+     *
+     * @return the stack, or null if it does not exist.
+     */
+    private Stack describeStack() {
 
+        final DescribeStacksRequest describeStacksRequest = new DescribeStacksRequest().withStackName(getStackIdentifier());
+        final Stack described;
+        try {
+            described = getStack(getRetryingClient().describeStacks(describeStacksRequest));
+        } catch (final AmazonServiceException e) {
+            if (isStackMissing(e)) {
+                return null;
+            }
+            throw e;
+        }
+        if (described != null && described.getStackId() != null) {
+            stackId = described.getStackId();
+        }
+        return described;
     }
 
-    private boolean isStackCreationSuccessful(final StackStatus status) {
+    /**
+     * @return true if the error is CloudFormation complaining about a stack name that does not exist (anymore).
+     */
+    private static boolean isStackMissing(final AmazonServiceException e) {
 
-        return status == StackStatus.CREATE_COMPLETE;
+        return "ValidationError".equals(e.getErrorCode()) && e.getMessage() != null && e.getMessage()
+                                                                                         .contains("does not exist");
     }
 
-    private void sleep() {
+    private Stack getStack(final DescribeStacksResult result) {
+
+        // Describe requests are targeted at this stack, so there is at most one.
+        final List<Stack> stacks = result.getStacks();
+        return stacks == null || stacks.isEmpty() ? null : stacks.get(0);
 
-        try {
-            Thread.sleep(waitBetweenAttempts * 1000);
-        } catch (final InterruptedException e) {
-            if (stack != null) {
-                logger.println("Received an interruption signal. There is a stack created or in the proces of creation. Check in your amazon account to ensure you are not charged for this.");
-                logger.println("Stack details: " + stack);
-            }
-        }
     }
 
-    private boolean isStackCreationInProgress(final StackStatus status) {
+    private boolean isStackCreationSuccessful(final StackStatus status) {
 
-        return status == StackStatus.CREATE_IN_PROGRESS;
+        return status == StackStatus.CREATE_COMPLETE;
     }
 
     private StackStatus getStackStatus(final String status) {
@@ -407,84 +1248,208 @@ public class CloudFormation {
         return map;
     }
 
-    private String getExpandedStackName() {
+    String getExpandedStackName() {
 
         return envVars.expand(stackName);
     }
 
+    /**
+     * @return the name of the oldest running stack whose name starts with the stack name, as long as there are at least
+     *         two of them. Otherwise the stack name itself. The stacks of the reuse cache and of the warm pools are left
+     *         out, as running builds may use them.
+     */
     private String getOldestStackNameWithPrefix() {
 
-        final List<StackSummary> stackSummaries = getAllRunningStacks();
-        final ArrayList<StackSummary> filteredStackSummries = new ArrayList<StackSummary>();
-        final List<String> stackNames = new ArrayList<String>();
-        for (final StackSummary summary : stackSummaries) {
-            if (summary.getStackName()
-                       .startsWith(stackName)) {
-                filteredStackSummries.add(summary);
+        final List<StackSummary> stacks = new ArrayList<StackSummary>();
+        for (final StackSummary summary : StackSummaryIndex.get(getRetryingClient(), awsAccessKey, awsRegion)
+                                                           .getStacksWithPrefix(getExpandedStackName())) {
+            if (!isHeldElsewhere(summary.getStackName())) {
+                stacks.add(summary);
             }
         }
-        if (filteredStackSummries.isEmpty() || filteredStackSummries.size() == 1) {
+        if (stacks.size() < 2) {
             return stackName;
         }
-        return returnOldestStackName(filteredStackSummries);
+        return stacks.get(0)
+                     .getStackName();
+
+    }
+
+    /**
+     * @return true if the given stack of the account and region belongs to the reuse cache or to a warm pool.
+     */
+    private boolean isHeldElsewhere(final String name) {
+
+        return StackReuseCache.get()
+                              .holds(name, awsAccessKey, awsRegion)
+               || WarmStackPool.get()
+                               .holds(name);
+    }
+
+    public Map<String, String> getStackParameters(final String stackName) {
+
+        final DescribeStacksRequest describeStacksRequest = new DescribeStacksRequest();
+        describeStacksRequest.setStackName(stackName);
+        final DescribeStacksResult describeStacksResult = getRetryingClient().describeStacks(describeStacksRequest);
+        final List<Stack> stacks = describeStacksResult.getStacks();
+        return getStackParameters(stacks.get(0));
+    }
+
+    private static Map<String, String> getStackParameters(final Stack stack) {
+
+        final Map<String, String> map = new LinkedHashMap<String, String>();
+        if (stack.getParameters() != null) {
+            for (final Parameter parameter : stack.getParameters()) {
+                map.put(parameter.getParameterKey(), parameter.getParameterValue());
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @return the parameters this stack is created with.
+     */
+    private Map<String, String> getParametersMap() {
 
+        final Map<String, String> map = new LinkedHashMap<String, String>();
+        if (parameters != null) {
+            for (final Parameter parameter : parameters) {
+                map.put(parameter.getParameterKey(), parameter.getParameterValue());
+            }
+        }
+        return map;
     }
 
-    private String returnOldestStackName(final ArrayList<StackSummary> filteredStackSummries) {
+    /**
+     * Checks the status of the stack being created or updated, until it is not in progress anymore.
+     */
+    private final class OperationPoll implements StackWaitScheduler.Poll<Stack> {
+
+        private final String operation;
+        private final Set<String> inProgressStatuses;
+        private final PollingStrategy.Schedule schedule = pollingStrategy.newSchedule();
+        private final long startTime = System.currentTimeMillis();
+        private final EventSchedule events = new EventSchedule();
+        private String lastStatus;
+
+        /**
+         * @param operation what is happening to the stack, for error messages.
+         * @param inProgressStatuses the statuses of the stack while the operation is in progress.
+         */
+        OperationPoll(final String operation, final Set<String> inProgressStatuses) {
+
+            this.operation = operation;
+            this.inProgressStatuses = inProgressStatuses;
+        }
+
+        public Stack poll() {
 
-        Date date = filteredStackSummries.get(0)
-                                         .getCreationTime();
-        String stackToDelete = "";
-        for (final StackSummary summary : filteredStackSummries) {
-            if (summary.getCreationTime()
-                       .before(date))
-                ;
-            {
-                date = summary.getCreationTime();
-                stackToDelete = summary.getStackName();
+            if (isTimeout(startTime)) {
+                throw new TimeoutException("Timed out waiting for stack to be " + operation + ". (timeout=" + timeout + ")");
+            }
+            countPoll();
+            stack = describeStack();
+            if (stack == null) {
+                throw new AmazonClientException("Stack " + getExpandedStackName() + " does not exist.");
             }
+            lastStatus = stack.getStackStatus();
+            events.printIfChanged(stack);
+            return inProgressStatuses.contains(lastStatus) ? null : stack;
+        }
+
+        public long nextDelay() {
+
+            return schedule.nextDelay(lastStatus);
+        }
+    }
+
+    /**
+     * Waits for the configured time after the stack is created, e.g. for its instances to finish booting, without
+     * holding a thread.
+     *
+     * @return the number of milliseconds waited.
+     */
+    private final class SleepPoll implements StackWaitScheduler.Poll<Long> {
+
+        private final long startTime = System.currentTimeMillis();
+
+        public Long poll() {
+
+            final long slept = System.currentTimeMillis() - startTime;
+            return slept >= TimeUnit.SECONDS.toMillis(sleep) ? Long.valueOf(slept) : null;
         }
 
-        return stackToDelete;
+        public long nextDelay() {
+
+            return Math.max(0, startTime + TimeUnit.SECONDS.toMillis(sleep) - System.currentTimeMillis());
+        }
     }
 
-    private List<StackSummary> getAllRunningStacks() {
+    /**
+     * Checks the status of the stack being deleted, until it is gone or failed deleting.
+     */
+    private final class DeletionPoll implements StackWaitScheduler.Poll<Boolean> {
+
+        private final PollingStrategy.Schedule schedule = pollingStrategy.newSchedule();
+        private final EventSchedule events = new EventSchedule();
+        private String lastStatus;
 
-        client = new AmazonCloudFormationClient(new AWSCredentials() {
+        public Boolean poll() {
 
-            public String getAWSAccessKeyId() {
+            countPoll();
+            stack = describeStack();
 
-                return awsAccessKey;
+            if (stack == null) {
+                return Boolean.TRUE;
             }
 
-            public String getAWSSecretKey() {
+            lastStatus = stack.getStackStatus();
+            events.printIfChanged(stack);
+            final StackStatus stackStatus = getStackStatus(lastStatus);
 
-                return awsSecretKey;
+            if (StackStatus.DELETE_COMPLETE == stackStatus) {
+                return Boolean.TRUE;
             }
-        });
-        final List<String> stackStatusFilters = new ArrayList<String>();
-        stackStatusFilters.add("UPDATE_COMPLETE");
-        stackStatusFilters.add("CREATE_COMPLETE");
-        stackStatusFilters.add("ROLLBACK_COMPLETE");
-        final ListStacksRequest listStacksRequest = new ListStacksRequest();
-        listStacksRequest.setStackStatusFilters(stackStatusFilters);
-        final ListStacksResult result = client.listStacks(listStacksRequest);
-        final List<StackSummary> stackSummaries = result.getStackSummaries();
-        return stackSummaries;
+
+            if (StackStatus.DELETE_FAILED == stackStatus) {
+                return Boolean.FALSE;
+            }
+
+            return null;
+        }
+
+        public long nextDelay() {
+
+            return schedule.nextDelay(lastStatus);
+        }
     }
 
-    public Map<String, String> getStackParameters(final String stackName) {
+    /**
+     * Reads the events of a polled stack when it changed, or every {@link #EVENT_INTERVAL} otherwise, rather than on
+     * every poll. The events left are printed once the operation is over.
+     */
+    private final class EventSchedule {
 
-        final DescribeStacksRequest describeStacksRequest = new DescribeStacksRequest();
-        describeStacksRequest.setStackName(stackName);
-        final DescribeStacksResult describeStacksResult = client.describeStacks(describeStacksRequest);
-        final List<Stack> stacks = describeStacksResult.getStacks();
-        final Stack stack = stacks.get(0);
-        final List<Parameter> parameters = stack.getParameters();
-        final Map<String, String> map = new LinkedHashMap<String, String>();
-        for (final Parameter parameter : parameters) {
-            map.put(parameter.getParameterKey(), parameter.getParameterValue());
+        private String lastStatus;
+        private Date lastUpdatedTime;
+        private long lastPrinted;
+
+        void printIfChanged(final Stack described) {
+
+            final long now = System.currentTimeMillis();
+            final boolean changed = !equal(lastStatus, described.getStackStatus()) || !equal(lastUpdatedTime, described.getLastUpdatedTime());
+            if (!changed && now - lastPrinted < EVENT_INTERVAL) {
+                return;
+            }
+            lastStatus = described.getStackStatus();
+            lastUpdatedTime = described.getLastUpdatedTime();
+            lastPrinted = now;
+            printStackEvents();
+        }
+
+        private boolean equal(final Object a, final Object b) {
+
+            return a == null ? b == null : a.equals(b);
         }
-        return map;
     }
 }
@@ -6,6 +6,7 @@ package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
 
 import hudson.EnvVars;
 import hudson.Extension;
+import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.Action;
 import hudson.model.BuildListener;
@@ -14,15 +15,12 @@ import hudson.model.AbstractProject;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Builder;
+import hudson.util.ListBoxModel;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.Properties;
 import java.util.logging.Logger;
 
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -36,10 +34,21 @@ public class CloudFormationBuildStep extends Builder {
     private static final Logger LOGGER = Logger.getLogger(CloudFormationBuildStep.class.getName());
     private final List<PostBuildStackBean> stacks;
 
+    /**
+     * The name of the {@link OutputFormat} to write the outputs of the stacks in.
+     */
+    private final String outputFormat;
+
     @DataBoundConstructor
-    public CloudFormationBuildStep(final List<PostBuildStackBean> stacks) {
+    public CloudFormationBuildStep(final List<PostBuildStackBean> stacks, final String outputFormat) {
 
         this.stacks = stacks;
+        this.outputFormat = outputFormat;
+    }
+
+    public CloudFormationBuildStep(final List<PostBuildStackBean> stacks) {
+
+        this(stacks, null);
     }
 
     public List<PostBuildStackBean> getStacks() {
@@ -47,6 +56,16 @@ public class CloudFormationBuildStep extends Builder {
         return stacks;
     }
 
+    public String getOutputFormat() {
+
+        return outputFormat;
+    }
+
+    public OutputFormat getParsedOutputFormat() {
+
+        return OutputFormat.parse(outputFormat);
+    }
+
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
 
@@ -81,37 +100,67 @@ public class CloudFormationBuildStep extends Builder {
         envVars.overrideAll(build.getBuildVariables());
 
         boolean result = true;
+        boolean recorded = false;
 
         for (final PostBuildStackBean stack : stacks) {
-            final CloudFormation cloudFormation = newCloudFormation(stack, build, envVars, listener.getLogger());
+            // A stack created in the background may outlive the build, and its log.
+            final PrintStream logger = stack.getBackground() ? BackgroundStackOperations.buildLogger(build, listener.getLogger()) : listener.getLogger();
+            final CloudFormation cloudFormation = newCloudFormation(stack, build, envVars, logger);
             /*
              * CloudFormation cloudFormation = new CloudFormation( listener.getLogger(), stack.getStackName(), "", new
              * HashMap<String, String>(), 0, stack.getParsedAwsAccessKey(envVars), stack.getParsedAwsSecretKey(envVars),
              * stack.getAwsRegion(), false, envVars );
              */
-            if (cloudFormation.create()) {
+            if (stack.getBackground()) {
+                BackgroundStackOperations.get()
+                                         .submit(build, cloudFormation, stack.getParsedDeployMode(), listener.getLogger());
+                continue;
+            }
+            final boolean deployed = stack.getParsedDeployMode() == DeployMode.CREATE_OR_UPDATE ? cloudFormation.deploy() : cloudFormation.create();
+            StackTimingAction.record(build, cloudFormation);
+            if (deployed) {
                 cloudFormation.printStackOutput();
-                storeOutputsInFile(envVars.get("WORKSPACE"), cloudFormation.getOutputs());
+                final StackOutputsAction.StackRecord record = StackOutputsAction.record(build, cloudFormation);
+                // Later stacks of this step may use the outputs, like later steps get them from the action.
+                envVars.putAll(record.getPrefixedOutputs());
+                recorded = true;
                 LOGGER.info("Success");
             } else {
                 LOGGER.warning("Failed");
                 result = false;
             }
         }
+        if (recorded) {
+            final StackOutputExporter exporter = new StackOutputExporter();
+            for (final StackOutputsAction.StackRecord record : build.getAction(StackOutputsAction.class)
+                                                                    .getStacks()
+                                                                    .values()) {
+                exporter.add(record);
+            }
+            final FilePath file = exporter.export(build.getWorkspace(), getParsedOutputFormat());
+            listener.getLogger()
+                    .println("Outputs stored in " + file.getRemote());
+        }
         return result;
     }
 
     protected CloudFormation newCloudFormation(final PostBuildStackBean postBuildStackBean,
                                                final AbstractBuild<?, ?> build,
                                                final EnvVars env,
-                                               final PrintStream logger) throws IOException {
-
-        return new CloudFormation(logger, postBuildStackBean.getStackName(), postBuildStackBean.getOutputPrefixName(),
-                                  build.getWorkspace()
-                                       .child(postBuildStackBean.getCloudFormationRecipe())
-                                       .readToString(), postBuildStackBean.getParsedParameters(env), postBuildStackBean.getTimeout(),
-                                  postBuildStackBean.getParsedAwsAccessKey(env), postBuildStackBean.getParsedAwsSecretKey(env),
-                                  postBuildStackBean.getParsedAwsRegion(env), env, false, postBuildStackBean.getSleep());
+                                               final PrintStream logger) throws IOException, InterruptedException {
+
+        final TemplateCache.Template template = TemplateCache.get()
+                                                             .load(build.getWorkspace()
+                                                                        .child(postBuildStackBean.getCloudFormationRecipe()));
+        final CloudFormation cloudFormation = new CloudFormation(logger, postBuildStackBean.getStackName(), postBuildStackBean.getOutputPrefixName(),
+                                                                 template.getBody(), postBuildStackBean.getParsedParameters(env, build.getWorkspace()),
+                                                                 postBuildStackBean.getTimeout(), postBuildStackBean.getParsedAwsAccessKey(env),
+                                                                 postBuildStackBean.getParsedAwsSecretKey(env), postBuildStackBean.getParsedAwsRegion(env), env,
+                                                                 false, postBuildStackBean.getSleep());
+        cloudFormation.setPollingStrategy(postBuildStackBean.getPollingStrategy());
+        cloudFormation.setReuse(postBuildStackBean.getReuseStack(), build.getExternalizableId());
+        cloudFormation.setAbortPolicy(postBuildStackBean.getParsedAbortPolicy());
+        return cloudFormation;
 
     }
 
@@ -121,35 +170,6 @@ public class CloudFormationBuildStep extends Builder {
         return DESCRIPTOR;
     }
 
-    private File storeOutputsInFile(final String workspace, final Map<String, String> outputs) {
-
-        final String outputFile = "aws_stack_output.properties";
-        final Properties props = new Properties();
-        FileWriter fw = null;
-        File file = null;
-
-        try {
-            file = new File(workspace + "/" + outputFile);
-            fw = new FileWriter(file);
-
-            props.putAll(outputs);
-            props.store(fw, "AWS properties");
-        } catch (final Exception e) {
-            e.printStackTrace();
-            return null;
-        }
-
-        try {
-            fw.close();
-        } catch (final IOException e) {
-            e.printStackTrace();
-        }
-
-        System.out.println("Outputs stored in " + workspace + "/" + outputFile);
-
-        return file;
-    }
-
     @Extension
     public static final CloudFormationBuildStep.DescriptorImpl DESCRIPTOR = new CloudFormationBuildStep.DescriptorImpl();
 
@@ -167,5 +187,14 @@ public class CloudFormationBuildStep extends Builder {
             return true;
         }
 
+        public ListBoxModel doFillOutputFormatItems() {
+
+            final ListBoxModel items = new ListBoxModel();
+            for (final OutputFormat format : OutputFormat.values()) {
+                items.add(format.readableName, format.name());
+            }
+            return items;
+        }
+
     }
 }
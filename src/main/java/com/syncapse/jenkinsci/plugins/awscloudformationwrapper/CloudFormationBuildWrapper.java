@@ -5,44 +5,84 @@ package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
 
 import hudson.EnvVars;
 import hudson.Extension;
+import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.BuildListener;
+import hudson.model.BuildableItemWithBuildWrappers;
+import hudson.model.Computer;
+import hudson.model.Item;
 import hudson.model.Result;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
+import hudson.model.listeners.ItemListener;
 import hudson.tasks.BuildWrapper;
 import hudson.tasks.BuildWrapperDescriptor;
+import hudson.util.LogTaskListener;
 
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
 
 import org.kohsuke.stapler.DataBoundConstructor;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
 /**
  * @author erickdovale
  *
  */
 public class CloudFormationBuildWrapper extends BuildWrapper {
 
+    private static final Logger LOGGER = Logger.getLogger(CloudFormationBuildWrapper.class.getName());
+
     protected List<StackBean> stacks;
 
-    private transient List<CloudFormation> cloudFormations = new ArrayList<CloudFormation>();
+    /**
+     * Maximum number of stacks deleted at the same time when tearing down. 0 means no limit.
+     */
+    private final int teardownParallelism;
 
     @DataBoundConstructor
-    public CloudFormationBuildWrapper(final List<StackBean> stacks) {
+    public CloudFormationBuildWrapper(final List<StackBean> stacks, final int teardownParallelism) {
 
         this.stacks = stacks;
+        this.teardownParallelism = teardownParallelism;
+    }
+
+    public CloudFormationBuildWrapper(final List<StackBean> stacks) {
+
+        this(stacks, 0);
     }
 
     @Override
     public void makeBuildVariables(final AbstractBuild build, final Map<String, String> variables) {
 
-        for (final CloudFormation cf : cloudFormations) {
-            variables.putAll(cf.getOutputs());
+        final StackOutputsAction outputs = build.getAction(StackOutputsAction.class);
+        if (outputs != null) {
+            variables.putAll(outputs.getVariables());
         }
 
     }
@@ -53,78 +93,451 @@ public class CloudFormationBuildWrapper extends BuildWrapper {
         final EnvVars env = build.getEnvironment(listener);
         env.overrideAll(build.getBuildVariables());
 
+        // Builds of the job share the wrapper, so each one keeps its stacks apart.
+        final BuildStacks buildStacks = new BuildStacks();
+        final boolean success;
+        try {
+            success = createStacks(buildStacks, build, env, listener);
+        } catch (final InterruptedException e) {
+            // The stacks being created were aborted already.
+            abortCreatedStacks(buildStacks, build, listener);
+            throw e;
+        }
+
+        // If any stack fails to create then destroy them all
+        if (!success) {
+            doTearDown(buildStacks, build, listener);
+            return null;
+        }
+
+        return new Environment() {
+
+            @Override
+            public boolean tearDown(final AbstractBuild build, final BuildListener listener) throws IOException, InterruptedException {
+
+                return doTearDown(buildStacks, build, listener);
+
+            }
+
+        };
+    }
+
+    /**
+     * Create the stacks, starting each one as soon as the stacks whose outputs it references are created. Stacks that
+     * do not depend on each other are created concurrently: the {@link StackWaitScheduler} polls them all, and their
+     * completions are handed to the build thread, which starts the stacks depending on them. Once a stack fails, no
+     * other stack is started, but the ones already started are waited for so that they can be torn down.
+     *
+     * @return true if all the stacks were created successfully.
+     */
+    private boolean createStacks(final BuildStacks buildStacks, final AbstractBuild<?, ?> build, final EnvVars env, final BuildListener listener)
+            throws IOException, InterruptedException {
+
+        final StackDependencies dependencies = new StackDependencies(stacks, env, build.getWorkspace());
+        final int[] pendingDependencies = new int[stacks.size()];
+        final Map<Integer, Future<Boolean>> running = new HashMap<Integer, Future<Boolean>>();
+        final Map<Integer, CloudFormation> started = new HashMap<Integer, CloudFormation>();
+        final BlockingQueue<Integer> completed = new LinkedBlockingQueue<Integer>();
+
         boolean success = true;
 
-        for (final StackBean stackBean : stacks) {
+        try {
+            for (int i = 0; i < stacks.size(); i++) {
+                pendingDependencies[i] = dependencies.getDependencies(i)
+                                                     .size();
+                if (pendingDependencies[i] == 0) {
+                    startCreation(buildStacks, i, build, env, listener, completed, running, started);
+                }
+            }
 
-            final CloudFormation cloudFormation = newCloudFormation(stackBean, build, env, listener.getLogger());
+            while (!running.isEmpty()) {
 
-            try {
-                if (cloudFormation.create()) {
+                final int index = completed.take();
+                final Future<Boolean> done = running.remove(index);
+                final CloudFormation cloudFormation = started.get(index);
+                final boolean created = isCreated(done, stacks.get(index), listener);
+                StackTimingAction.record(build, cloudFormation);
+                if (created && cloudFormation.getAutoDeleteStack()) {
+                    StackLedger.get()
+                               .record(cloudFormation.ledgerEntry(build.getExternalizableId(), StackLedger.CREATED));
+                } else {
+                    // Stacks failing to be created are left as they were before, and reused stacks belong to the cache.
+                    StackLedger.get()
+                               .remove(build.getExternalizableId(), cloudFormation.getExpandedStackName());
+                }
+
+                if (created) {
                     cloudFormation.printStackOutput();
-                    cloudFormations.add(cloudFormation);
-                    env.putAll(cloudFormation.getOutputs());
+                    buildStacks.created.add(cloudFormation);
+                    final StackOutputsAction.StackRecord record = StackOutputsAction.record(build, cloudFormation);
+                    final Set<CloudFormation> used = Collections.newSetFromMap(new IdentityHashMap<CloudFormation, Boolean>());
+                    for (final int dependency : dependencies.getDependencies(index)) {
+                        used.add(started.get(dependency));
+                    }
+                    buildStacks.dependencies.put(cloudFormation, used);
+                    env.putAll(record.getPrefixedOutputs());
+                    if (success) {
+                        for (final int dependent : dependencies.getDependents(index)) {
+                            if (--pendingDependencies[dependent] == 0) {
+                                startCreation(buildStacks, dependent, build, env, listener, completed, running, started);
+                            }
+                        }
+                    }
                 } else {
                     build.setResult(Result.FAILURE);
                     success = false;
-                    break;
                 }
-            } catch (final TimeoutException e) {
+            }
+        } catch (final InterruptedException e) {
+            // Nothing waits for the stacks being created anymore, so they are aborted here.
+            for (final Map.Entry<Integer, Future<Boolean>> creation : running.entrySet()) {
+                creation.getValue()
+                        .cancel(false);
+                final CloudFormation cloudFormation = started.get(creation.getKey());
                 listener.getLogger()
-                        .append("ERROR creating stack with name " + stackBean.getStackName()
-                                        + ". Operation timedout. Try increasing the timeout period in your stack configuration.");
-                build.setResult(Result.FAILURE);
-                success = false;
-                break;
+                        .println("Interrupted while creating stack: " + cloudFormation.getExpandedStackName());
+                buildStacks.releaseLease(cloudFormation);
+                abort(cloudFormation, build);
             }
-
+            throw e;
         }
 
-        // If any stack fails to create then destroy them all
-        if (!success) {
-            doTearDown();
-            return null;
+        return success;
+    }
+
+    /**
+     * Apply the abort policy of the stacks the build created so far, as it will not tear them down.
+     */
+    private void abortCreatedStacks(final BuildStacks buildStacks, final AbstractBuild<?, ?> build, final BuildListener listener) {
+
+        listener.getLogger()
+                .println("Build aborted while creating its stacks.");
+        for (final CloudFormation cf : buildStacks.created) {
+            buildStacks.releaseLease(cf);
+            if (cf.getAutoDeleteStack()) {
+                abort(cf, build);
+            }
         }
+    }
 
-        return new Environment() {
+    /**
+     * Apply the abort policy of the given stack, and forget it in the {@link StackLedger} once it is left or deleted.
+     * Stacks failing to be deleted stay in the ledger, to be deleted on the next startup.
+     */
+    private static void abort(final CloudFormation cf, final AbstractBuild<?, ?> build) {
 
-            @Override
-            public boolean tearDown(final AbstractBuild build, final BuildListener listener) throws IOException, InterruptedException {
+        final String buildId = build.getExternalizableId();
+        Futures.addCallback(cf.abort(), new FutureCallback<Boolean>() {
 
-                return doTearDown();
+            public void onSuccess(final Boolean aborted) {
 
+                if (aborted) {
+                    StackLedger.get()
+                               .remove(buildId, cf.getExpandedStackName());
+                }
             }
 
-        };
+            public void onFailure(final Throwable t) {
+
+                LOGGER.log(Level.WARNING, "Failed to abort stack " + cf.getExpandedStackName(), t);
+            }
+        });
     }
 
-    protected boolean doTearDown() throws IOException, InterruptedException {
+    /**
+     * Start creating the given stack, or lease it from its warm pool. Its index is added to the given queue once it is
+     * created or failed to be.
+     */
+    private void startCreation(final BuildStacks buildStacks, final int index, final AbstractBuild<?, ?> build, final EnvVars env,
+            final BuildListener listener, final BlockingQueue<Integer> completed, final Map<Integer, Future<Boolean>> running, final Map<Integer, CloudFormation> started)
+            throws IOException, InterruptedException {
+
+        // Each stack gets its own copy of the environment, as the build one keeps receiving the outputs of the other stacks.
+        final CloudFormation cloudFormation = newCloudFormation(stacks.get(index), build, new EnvVars(env), listener.getLogger());
+        started.put(index, cloudFormation);
+        final boolean leased = leaseWarmStack(buildStacks, stacks.get(index), cloudFormation, listener);
+        if (stacks.get(index)
+                  .getAutoDeleteStack()) {
+            StackLedger.get()
+                       .record(cloudFormation.ledgerEntry(build.getExternalizableId(), leased ? StackLedger.CREATED : StackLedger.CREATE));
+        }
+        final ListenableFuture<Boolean> creation = leased ? Futures.immediateFuture(Boolean.TRUE) : startCreate(cloudFormation);
+        running.put(index, creation);
+        creation.addListener(new Runnable() {
 
-        boolean result = true;
+            public void run() {
 
-        final List<CloudFormation> reverseOrder = new ArrayList<CloudFormation>(cloudFormations);
-        Collections.reverse(reverseOrder);
+                completed.add(index);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * @return the creation of the given stack, failed with the exception thrown while asking for it, if any.
+     */
+    private ListenableFuture<Boolean> startCreate(final CloudFormation cloudFormation) {
+
+        try {
+            return cloudFormation.startCreate();
+        } catch (final RuntimeException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * Make the given object stand for a ready stack of the warm pool, if the stack has one.
+     *
+     * @return true if a stack was leased, false if the stack has to be created.
+     */
+    private boolean leaseWarmStack(final BuildStacks buildStacks, final StackBean stackBean, final CloudFormation cloudFormation,
+            final BuildListener listener) {
+
+        if (stackBean.getWarmPool() == null || !stackBean.getAutoDeleteStack()) {
+            return false;
+        }
+        final WarmStackPool.Lease lease = WarmStackPool.get()
+                                                       .lease(cloudFormation, stackBean.getWarmPool());
+        if (lease == null) {
+            listener.getLogger()
+                    .println("No warm stack is ready for stack " + stackBean.getStackName() + ", creating it.");
+            return false;
+        }
+        listener.getLogger()
+                .println("Using warm stack " + lease.getStackName() + " for stack " + stackBean.getStackName());
+        cloudFormation.adoptLeased(lease.getStackId(), lease.getStackOutputs());
+        buildStacks.leases.put(cloudFormation, lease);
+        return true;
+    }
+
+    private boolean isCreated(final Future<Boolean> creation, final StackBean stackBean, final BuildListener listener) throws InterruptedException {
+
+        try {
+            return creation.get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                listener.getLogger()
+                        .append("ERROR creating stack with name " + stackBean.getStackName()
+                                        + ". Operation timedout. Try increasing the timeout period in your stack configuration.");
+            } else {
+                e.getCause()
+                 .printStackTrace(listener.error("ERROR creating stack with name " + stackBean.getStackName()));
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Delete the stacks that should be deleted automatically. Stacks are deleted concurrently (up to
+     * {@link #getTeardownParallelism()} at a time), each one as soon as the stacks using its outputs are gone.
+     *
+     * Stacks leased from a warm pool go back to it instead when their pool allows it and the build succeeded.
+     *
+     * @return true if all the stacks were deleted successfully. All stacks are attempted regardless of failures.
+     */
+    private boolean doTearDown(final BuildStacks buildStacks, final AbstractBuild<?, ?> build, final BuildListener listener) throws IOException,
+            InterruptedException {
+
+        final List<CloudFormation> created = buildStacks.created;
+        // Number of stacks using the outputs of each stack that are not torn down yet.
+        final Map<CloudFormation, Integer> pendingDependents = new IdentityHashMap<CloudFormation, Integer>();
+        for (final CloudFormation cf : created) {
+            pendingDependents.put(cf, 0);
+        }
+        for (final CloudFormation cf : created) {
+            for (final CloudFormation dependency : buildStacks.getDependencies(cf)) {
+                pendingDependents.put(dependency, pendingDependents.get(dependency) + 1);
+            }
+        }
+
+        final int threads = teardownParallelism > 0 ? Math.min(teardownParallelism, created.size()) : created.size();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads),
+                                                                      new StackWaitScheduler.DaemonThreadFactory("CloudFormation stack teardown"));
+        final CompletionService<Boolean> completionService = new ExecutorCompletionService<Boolean>(executor);
+        final Map<Future<Boolean>, CloudFormation> running = new HashMap<Future<Boolean>, CloudFormation>();
+        final LinkedList<CloudFormation> ready = new LinkedList<CloudFormation>();
+        final List<CloudFormation> failed = new ArrayList<CloudFormation>();
 
+        // Reverse creation order, so that with no parallelism limit stacks go in the same order they used to.
+        final List<CloudFormation> reverseOrder = new ArrayList<CloudFormation>(created);
+        Collections.reverse(reverseOrder);
         for (final CloudFormation cf : reverseOrder) {
-            // automatically delete the stack?
-            if (cf.getAutoDeleteStack()) {
-                // delete the stack
-                result = result && cf.delete();
+            if (pendingDependents.get(cf) == 0) {
+                ready.add(cf);
+            }
+        }
+
+        try {
+            while (!ready.isEmpty() || !running.isEmpty()) {
+
+                while (!ready.isEmpty()) {
+                    final CloudFormation cf = ready.removeFirst();
+                    // automatically delete the stack?
+                    if (returnToWarmPool(buildStacks, cf, build, listener)) {
+                        StackLedger.get()
+                                   .remove(build.getExternalizableId(), cf.getExpandedStackName());
+                        release(buildStacks, cf, pendingDependents, ready);
+                    } else if (cf.getAutoDeleteStack()) {
+                        StackLedger.get()
+                                   .record(cf.ledgerEntry(build.getExternalizableId(), StackLedger.DELETE));
+                        running.put(completionService.submit(new Callable<Boolean>() {
+
+                            public Boolean call() throws Exception {
+
+                                return cf.delete();
+                            }
+                        }), cf);
+                    } else {
+                        release(buildStacks, cf, pendingDependents, ready);
+                    }
+                }
+
+                if (!running.isEmpty()) {
+                    final Future<Boolean> done = completionService.take();
+                    final CloudFormation cf = running.remove(done);
+                    final boolean deleted = isDeleted(done, listener);
+                    StackTimingAction.record(build, cf);
+                    if (deleted) {
+                        StackLedger.get()
+                                   .remove(build.getExternalizableId(), cf.getExpandedStackName());
+                    } else {
+                        // Left in the ledger, to be deleted again on the next startup.
+                        failed.add(cf);
+                    }
+                    release(buildStacks, cf, pendingDependents, ready);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (!failed.isEmpty()) {
+            listener.getLogger()
+                    .println("ERROR " + failed.size() + " of the stacks failed to be deleted. Check in your amazon account to ensure you are not charged for them.");
+        }
+
+        return failed.isEmpty();
+    }
+
+    private boolean returnToWarmPool(final BuildStacks buildStacks, final CloudFormation cf, final AbstractBuild<?, ?> build,
+            final BuildListener listener) {
+
+        final WarmStackPool.Lease lease = buildStacks.leases.get(cf);
+        if (lease == null) {
+            return false;
+        }
+        // A result is only set once the build failed or completed.
+        final Result result = build.getResult();
+        final boolean succeeded = result == null || result.isBetterOrEqualTo(Result.SUCCESS);
+        if (!succeeded || !lease.getConfig()
+                                .isReuse()) {
+            buildStacks.releaseLease(cf);
+            return false;
+        }
+        if (!WarmStackPool.get()
+                          .giveBack(lease, cf.getStackOutputs())) {
+            buildStacks.releaseLease(cf);
+            return false;
+        }
+        listener.getLogger()
+                .println("Returned stack " + lease.getStackName() + " to the warm pool.");
+        return true;
+    }
+
+    /**
+     * Mark the stack as torn down, making the stacks whose outputs it used ready once nothing else uses them.
+     */
+    private void release(final BuildStacks buildStacks, final CloudFormation cf, final Map<CloudFormation, Integer> pendingDependents,
+            final LinkedList<CloudFormation> ready) {
+
+        for (final CloudFormation dependency : buildStacks.getDependencies(cf)) {
+            final int pending = pendingDependents.get(dependency) - 1;
+            pendingDependents.put(dependency, pending);
+            if (pending == 0) {
+                ready.add(dependency);
             }
         }
+    }
 
-        return result;
+    private boolean isDeleted(final Future<Boolean> deletion, final BuildListener listener) throws InterruptedException {
+
+        try {
+            return deletion.get();
+        } catch (final ExecutionException e) {
+            e.getCause()
+             .printStackTrace(listener.error("ERROR deleting stack"));
+            return false;
+        }
     }
 
     protected CloudFormation newCloudFormation(final StackBean stackBean, final AbstractBuild<?, ?> build, final EnvVars env, final PrintStream logger)
-            throws IOException {
+            throws IOException, InterruptedException {
+
+        final CloudFormation cloudFormation = newDetachedCloudFormation(stackBean, build.getWorkspace(), env, logger);
+        cloudFormation.setReuse(stackBean.getReuseStack(), build.getExternalizableId());
+        cloudFormation.setAbortPolicy(stackBean.getParsedAbortPolicy());
+        return cloudFormation;
 
-        return new CloudFormation(logger, stackBean.getStackName(), stackBean.getOutputPrefixName(), build.getWorkspace()
-                                                                                                          .child(stackBean.getCloudFormationRecipe())
-                                                                                                          .readToString(), stackBean.getParsedParameters(env),
-                                  stackBean.getTimeout(), stackBean.getParsedAwsAccessKey(env), stackBean.getParsedAwsSecretKey(env), stackBean.getParsedAwsRegion(env),
-                                  stackBean.getAutoDeleteStack(), env, false);
+    }
 
+    /**
+     * @return the stack of the given bean, without the settings tied to a build.
+     */
+    private static CloudFormation newDetachedCloudFormation(final StackBean stackBean, final FilePath workspace, final EnvVars env, final PrintStream logger)
+            throws IOException, InterruptedException {
+
+        final TemplateCache.Template template = TemplateCache.get()
+                                                             .load(workspace.child(stackBean.getCloudFormationRecipe()));
+        final CloudFormation cloudFormation = new CloudFormation(logger, stackBean.getStackName(), stackBean.getOutputPrefixName(), template.getBody(),
+                                                                 stackBean.getParsedParameters(env, workspace), stackBean.getTimeout(),
+                                                                 stackBean.getParsedAwsAccessKey(env), stackBean.getParsedAwsSecretKey(env),
+                                                                 stackBean.getParsedAwsRegion(env), stackBean.getAutoDeleteStack(), env, false);
+        cloudFormation.setPollingStrategy(stackBean.getPollingStrategy());
+        return cloudFormation;
+    }
+
+    /**
+     * Start filling the warm pools of the stacks, so that the next build finds ready stacks even if it is the first
+     * one. Only the stacks whose template is in a workspace of the project and whose settings reference no build
+     * variable can be prepared, the others being pooled from their first build on.
+     */
+    void prepareWarmPools(final AbstractProject<?, ?> project) {
+
+        final FilePath workspace = project.getSomeWorkspace();
+        if (workspace == null) {
+            return;
+        }
+        final EnvVars env = project.getCharacteristicEnvVars();
+        for (final StackBean stackBean : stacks) {
+            if (stackBean.getWarmPool() == null || !stackBean.getAutoDeleteStack() || referencesVariables(stackBean)) {
+                continue;
+            }
+            try {
+                WarmStackPool.get()
+                             .prepare(newDetachedCloudFormation(stackBean, workspace, env, new LogTaskListener(LOGGER, Level.FINE).getLogger()),
+                                      stackBean.getWarmPool());
+            } catch (final IOException e) {
+                LOGGER.log(Level.FINE, "Failed to prepare the warm pool of stack " + stackBean.getStackName(), e);
+            } catch (final InterruptedException e) {
+                Thread.currentThread()
+                      .interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if the stack would differ from one build to the next, so that its pool cannot be filled ahead of
+     *         them.
+     */
+    private static boolean referencesVariables(final StackBean stackBean) {
+
+        for (final String setting : new String[] { stackBean.getCloudFormationRecipe(), stackBean.getParameters(), stackBean.getParametersFile(),
+                                                   stackBean.getAwsAccessKey(), stackBean.getAwsSecretKey(), stackBean.getAwsRegion() }) {
+            if (setting != null && setting.indexOf('$') >= 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Extension
@@ -149,14 +562,96 @@ public class CloudFormationBuildWrapper extends BuildWrapper {
         return stacks;
     }
 
+    public int getTeardownParallelism() {
+
+        return teardownParallelism;
+    }
+
     /**
-     * @return
+     * Prepares the warm pools of the projects when Jenkins starts and when they are saved, in the background as their
+     * templates may have to be read from agents.
      */
-    private Object readResolve() {
+    @Extension
+    public static final class WarmPoolPreparer extends ItemListener {
+
+        @Override
+        public void onLoaded() {
+
+            for (final BuildableItemWithBuildWrappers item : Jenkins.getInstance()
+                                                                    .getAllItems(BuildableItemWithBuildWrappers.class)) {
+                prepare(item);
+            }
+        }
+
+        @Override
+        public void onCreated(final Item item) {
+
+            if (item instanceof BuildableItemWithBuildWrappers) {
+                prepare((BuildableItemWithBuildWrappers) item);
+            }
+        }
+
+        @Override
+        public void onUpdated(final Item item) {
 
-        // Initialize the cloud formation collection during deserialization to avoid NPEs.
-        cloudFormations = new ArrayList<CloudFormation>();
-        return this;
+            onCreated(item);
+        }
+
+        private static void prepare(final BuildableItemWithBuildWrappers item) {
+
+            final CloudFormationBuildWrapper wrapper = item.getBuildWrappersList()
+                                                           .get(CloudFormationBuildWrapper.class);
+            if (wrapper == null) {
+                return;
+            }
+            Computer.threadPoolForRemoting.submit(new Runnable() {
+
+                public void run() {
+
+                    wrapper.prepareWarmPools(item.asProject());
+                }
+            });
+        }
+    }
+
+    /**
+     * The stacks of one build.
+     */
+    private static final class BuildStacks {
+
+        /**
+         * The stacks created or leased, in the order they were.
+         */
+        private final List<CloudFormation> created = new ArrayList<CloudFormation>();
+
+        /**
+         * The created stacks whose outputs each created stack uses.
+         */
+        private final Map<CloudFormation, Set<CloudFormation>> dependencies = new IdentityHashMap<CloudFormation, Set<CloudFormation>>();
+
+        /**
+         * The stacks leased from a {@link WarmStackPool} instead of being created.
+         */
+        private final Map<CloudFormation, WarmStackPool.Lease> leases = new IdentityHashMap<CloudFormation, WarmStackPool.Lease>();
+
+        Set<CloudFormation> getDependencies(final CloudFormation cf) {
+
+            final Set<CloudFormation> used = dependencies.get(cf);
+            return used != null ? used : Collections.<CloudFormation> emptySet();
+        }
+
+        /**
+         * Let the warm pool forget the given stack if it was leased, as the build deletes or keeps it instead of giving
+         * it back.
+         */
+        void releaseLease(final CloudFormation cf) {
+
+            final WarmStackPool.Lease lease = leases.get(cf);
+            if (lease != null) {
+                WarmStackPool.get()
+                             .release(lease);
+            }
+        }
     }
 
 }
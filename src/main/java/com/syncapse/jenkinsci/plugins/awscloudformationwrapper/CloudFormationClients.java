@@ -0,0 +1,317 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.Extension;
+import hudson.init.Terminator;
+import hudson.model.PeriodicWork;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.AmazonCloudFormationClient;
+
+/**
+ * Plugin wide registry of CloudFormation clients, one per set of credentials and region.
+ *
+ * AWS clients are thread safe and each one owns an HTTP connection pool, so sharing them saves threads, connections and
+ * TLS handshakes compared to creating a client for every stack. Clients that have not been used for a while are shut
+ * down, and all of them are shut down when Jenkins stops.
+ *
+ * Every call goes through the {@link ApiRateLimiter} of its account and region.
+ */
+public final class CloudFormationClients {
+
+    private static final Logger LOGGER = Logger.getLogger(CloudFormationClients.class.getName());
+
+    /**
+     * Maximum number of open HTTP connections per client.
+     */
+    private static final int MAX_CONNECTIONS = Integer.getInteger(CloudFormationClients.class.getName() + ".maxConnections", 10);
+
+    /**
+     * Minutes after which an unused client is shut down.
+     */
+    private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(Long.getLong(CloudFormationClients.class.getName() + ".idleTimeout", 10));
+
+    private static final CloudFormationClients INSTANCE = new CloudFormationClients();
+
+    private final ConcurrentMap<Key, CachedClient> clients = new ConcurrentHashMap<Key, CachedClient>();
+
+    /**
+     * By access key and region, as the API limits of AWS apply to the account whatever the credentials.
+     */
+    private final ConcurrentMap<String, ApiRateLimiter> rateLimiters = new ConcurrentHashMap<String, ApiRateLimiter>();
+
+    private volatile ClientFactory clientFactory;
+
+    private CloudFormationClients() {
+
+    }
+
+    public static CloudFormationClients get() {
+
+        return INSTANCE;
+    }
+
+    /**
+     * @return the shared client for the given credentials and region.
+     */
+    public AmazonCloudFormation getClient(final String awsAccessKey, final String awsSecretKey, final Region region) {
+
+        return getCachedClient(new Key(awsAccessKey, awsSecretKey, region)).proxy;
+    }
+
+    private CachedClient getCachedClient(final Key key) {
+
+        CachedClient cached = clients.get(key);
+        if (cached == null) {
+            final AmazonCloudFormation client = newClient(key);
+            final CachedClient created = new CachedClient(key, client, getRateLimiter(key).limit(client));
+            cached = clients.putIfAbsent(key, created);
+            if (cached == null) {
+                cached = created;
+            } else {
+                created.client.shutdown(); // another thread was faster.
+            }
+        }
+        cached.lastUsed = System.currentTimeMillis();
+        return cached;
+    }
+
+    private ApiRateLimiter getRateLimiter(final Key key) {
+
+        final String account = key.awsAccessKey + "@" + key.region.name();
+        ApiRateLimiter limiter = rateLimiters.get(account);
+        if (limiter == null) {
+            rateLimiters.putIfAbsent(account, new ApiRateLimiter());
+            limiter = rateLimiters.get(account);
+        }
+        return limiter;
+    }
+
+    private AmazonCloudFormation newClient(final Key key) {
+
+        final ClientFactory factory = clientFactory;
+        if (factory != null) {
+            return factory.newClient(key.awsAccessKey, key.awsSecretKey, key.region);
+        }
+        final ClientConfiguration configuration = new ClientConfiguration();
+        configuration.setMaxConnections(MAX_CONNECTIONS);
+        // Failed calls are retried by the ApiRetrier of each CloudFormation, which knows which ones are safe to send again.
+        configuration.setMaxErrorRetry(0);
+        final AmazonCloudFormation client = new AmazonCloudFormationClient(new BasicAWSCredentials(key.awsAccessKey, key.awsSecretKey), configuration);
+        client.setEndpoint(key.region.endPoint);
+        LOGGER.fine("Created CloudFormation client for " + key);
+        return client;
+    }
+
+    /**
+     * Shut down the clients that have not been used for {@link #IDLE_TIMEOUT}.
+     */
+    void evictIdleClients() {
+
+        final long now = System.currentTimeMillis();
+        for (final Iterator<Map.Entry<Key, CachedClient>> it = clients.entrySet()
+                                                                      .iterator(); it.hasNext();) {
+            final Map.Entry<Key, CachedClient> entry = it.next();
+            final CachedClient cached = entry.getValue();
+            // A client with calls in progress is not idle, whenever it was last handed out.
+            if (now - cached.lastUsed > IDLE_TIMEOUT && cached.close()) {
+                clients.remove(entry.getKey(), cached);
+                LOGGER.fine("Shutting down idle CloudFormation client for " + entry.getKey());
+                cached.client.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Make all the stacks use clients of the given factory from now on, e.g. to run against a simulated CloudFormation
+     * in tests.
+     *
+     * @param factory null to go back to the AWS clients.
+     */
+    void setClientFactory(final ClientFactory factory) {
+
+        clientFactory = factory;
+        shutdown();
+    }
+
+    @Terminator
+    public static void shutdown() {
+
+        for (final Iterator<CachedClient> it = INSTANCE.clients.values()
+                                                             .iterator(); it.hasNext();) {
+            final CachedClient cached = it.next();
+            it.remove();
+            cached.forceClose();
+            cached.client.shutdown();
+        }
+    }
+
+    interface ClientFactory {
+
+        AmazonCloudFormation newClient(String awsAccessKey, String awsSecretKey, Region region);
+    }
+
+    /**
+     * A client of the registry. Callers are handed a proxy, which counts the calls in progress so that the client is
+     * only shut down when none is. A call through the proxy of a client shut down since it was handed out goes to the
+     * client registered in its place.
+     */
+    private final class CachedClient implements InvocationHandler {
+
+        private final Key key;
+        private final AmazonCloudFormation client;
+        private final AmazonCloudFormation limitedClient;
+        private final AmazonCloudFormation proxy;
+        /**
+         * The number of calls in progress, -1 once the client is closed.
+         */
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile long lastUsed;
+
+        CachedClient(final Key key, final AmazonCloudFormation client, final AmazonCloudFormation limitedClient) {
+
+            this.key = key;
+            this.client = client;
+            this.limitedClient = limitedClient;
+            this.proxy = (AmazonCloudFormation) Proxy.newProxyInstance(AmazonCloudFormation.class.getClassLoader(),
+                                                                       new Class<?>[] { AmazonCloudFormation.class }, this);
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        /**
+         * @return true if the client was closed, which it is not while calls are in progress.
+         */
+        boolean close() {
+
+            return calls.compareAndSet(0, -1) || calls.get() < 0;
+        }
+
+        /**
+         * Close the client even though calls are in progress, e.g. when Jenkins stops.
+         */
+        void forceClose() {
+
+            calls.set(-1);
+        }
+
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+
+            CachedClient target = this;
+            while (!target.enter()) {
+                // Closed, and being removed unless another call already did.
+                clients.remove(key, target);
+                target = getCachedClient(key);
+            }
+            try {
+                target.lastUsed = System.currentTimeMillis();
+                return method.invoke(target.limitedClient, args);
+            } catch (final InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                target.leave();
+            }
+        }
+
+        /**
+         * @return false if the client is closed.
+         */
+        private boolean enter() {
+
+            int current;
+            do {
+                current = calls.get();
+                if (current < 0) {
+                    return false;
+                }
+            } while (!calls.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        private void leave() {
+
+            int current;
+            do {
+                current = calls.get();
+                if (current <= 0) {
+                    return; // closed by force meanwhile.
+                }
+            } while (!calls.compareAndSet(current, current - 1));
+        }
+    }
+
+    private static final class Key {
+
+        private final String awsAccessKey;
+        private final String awsSecretKey;
+        private final Region region;
+
+        Key(final String awsAccessKey, final String awsSecretKey, final Region region) {
+
+            this.awsAccessKey = awsAccessKey;
+            this.awsSecretKey = awsSecretKey;
+            this.region = region != null ? region : Region.getDefault();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return equal(awsAccessKey, other.awsAccessKey) && equal(awsSecretKey, other.awsSecretKey) && region == other.region;
+        }
+
+        @Override
+        public int hashCode() {
+
+            int result = awsAccessKey != null ? awsAccessKey.hashCode() : 0;
+            result = 31 * result + (awsSecretKey != null ? awsSecretKey.hashCode() : 0);
+            return 31 * result + region.hashCode();
+        }
+
+        /**
+         * Never includes the secret key, as keys end up in logs.
+         */
+        @Override
+        public String toString() {
+
+            return awsAccessKey + "@" + region.shortName;
+        }
+
+        private static boolean equal(final String a, final String b) {
+
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    @Extension
+    public static final class IdleClientReaper extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+
+            return MIN;
+        }
+
+        @Override
+        protected void doRun() {
+
+            get().evictIdleClients();
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.Extension;
+import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+import org.kohsuke.stapler.StaplerRequest;
+
+/**
+ * Plugin wide settings, on the Configure System page.
+ */
+@Extension
+public class CloudFormationGlobalConfiguration extends GlobalConfiguration {
+
+    public static final double DEFAULT_API_CALLS_PER_SECOND = 5;
+    public static final int DEFAULT_API_BURST = 10;
+
+    /**
+     * Used when Jenkins is not running, e.g. in unit tests.
+     */
+    private static final CloudFormationGlobalConfiguration DEFAULTS = new CloudFormationGlobalConfiguration(false);
+
+    /**
+     * Calls to the CloudFormation API allowed per second for each account and region, 0 for no limit.
+     */
+    private double apiCallsPerSecond = DEFAULT_API_CALLS_PER_SECOND;
+
+    /**
+     * Calls to the CloudFormation API allowed at once for each account and region, above the rate.
+     */
+    private int apiBurst = DEFAULT_API_BURST;
+
+    public CloudFormationGlobalConfiguration() {
+
+        this(true);
+    }
+
+    private CloudFormationGlobalConfiguration(final boolean load) {
+
+        if (load) {
+            load();
+        }
+    }
+
+    public static CloudFormationGlobalConfiguration get() {
+
+        if (Jenkins.getInstance() == null) {
+            return DEFAULTS;
+        }
+        final CloudFormationGlobalConfiguration configuration = GlobalConfiguration.all()
+                                                                                   .get(CloudFormationGlobalConfiguration.class);
+        return configuration != null ? configuration : DEFAULTS;
+    }
+
+    @Override
+    public boolean configure(final StaplerRequest req, final JSONObject json) throws FormException {
+
+        req.bindJSON(this, json);
+        save();
+        return true;
+    }
+
+    @Override
+    public String getDisplayName() {
+
+        return "AWS Cloud Formation";
+    }
+
+    public double getApiCallsPerSecond() {
+
+        return apiCallsPerSecond;
+    }
+
+    public void setApiCallsPerSecond(final double apiCallsPerSecond) {
+
+        this.apiCallsPerSecond = Math.max(0, apiCallsPerSecond);
+    }
+
+    public int getApiBurst() {
+
+        return apiBurst;
+    }
+
+    public void setApiBurst(final int apiBurst) {
+
+        this.apiBurst = apiBurst > 0 ? apiBurst : DEFAULT_API_BURST;
+    }
+
+}
@@ -75,7 +75,21 @@ public class CloudFormationNotifier extends Notifier {
                                                                      new HashMap<String, String>(), 0, stack.getParsedAwsAccessKey(envVars),
                                                                      stack.getParsedAwsSecretKey(envVars), stack.getParsedAwsRegion(envVars), false, envVars,
                                                                      stack.getIsPrefixSelected());
-            if (cloudFormation.delete()) {
+            if (!Boolean.TRUE.equals(stack.getIsPrefixSelected())) {
+                // A stack of this build is deleted by the id it was created with, without looking it up by name.
+                final StackOutputsAction.StackRecord created = StackOutputsAction.lookup(build, cloudFormation.getExpandedStackName());
+                if (created != null && created.isShared()) {
+                    listener.getLogger()
+                            .println("Not deleting stack " + created.getStackName() + ", which belongs to the reuse cache or a warm pool.");
+                    continue;
+                }
+                if (created != null && created.getStackId() != null) {
+                    cloudFormation.adopt(created.getStackId(), created.getOutputs());
+                }
+            }
+            final boolean deleted = cloudFormation.delete();
+            StackTimingAction.record(build, cloudFormation);
+            if (deleted) {
                 LOGGER.info("Success");
             } else {
                 LOGGER.warning("Failed");
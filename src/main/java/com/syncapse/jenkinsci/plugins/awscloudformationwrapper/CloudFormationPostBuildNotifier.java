@@ -78,15 +78,25 @@ public class CloudFormationPostBuildNotifier extends Notifier {
         boolean result = true;
 
         for (final PostBuildStackBean stack : stacks) {
-            final CloudFormation cloudFormation = newCloudFormation(stack, build, envVars, listener.getLogger());
+            // A stack created in the background may outlive the build, and its log.
+            final PrintStream logger = stack.getBackground() ? BackgroundStackOperations.buildLogger(build, listener.getLogger()) : listener.getLogger();
+            final CloudFormation cloudFormation = newCloudFormation(stack, build, envVars, logger);
             /*
              * CloudFormation cloudFormation = new CloudFormation( listener.getLogger(), stack.getStackName(), "", new
              * HashMap<String, String>(), 0, stack.getParsedAwsAccessKey(envVars), stack.getParsedAwsSecretKey(envVars),
              * stack.getAwsRegion(), false, envVars );
              */
-            if (cloudFormation.create()) {
+            if (stack.getBackground()) {
+                BackgroundStackOperations.get()
+                                         .submit(build, cloudFormation, stack.getParsedDeployMode(), listener.getLogger());
+                continue;
+            }
+            final boolean deployed = stack.getParsedDeployMode() == DeployMode.CREATE_OR_UPDATE ? cloudFormation.deploy() : cloudFormation.create();
+            StackTimingAction.record(build, cloudFormation);
+            if (deployed) {
                 cloudFormation.printStackOutput();
-                envVars.putAll(cloudFormation.getOutputs());
+                envVars.putAll(StackOutputsAction.record(build, cloudFormation)
+                                                 .getPrefixedOutputs());
                 LOGGER.info("Success");
             } else {
                 LOGGER.warning("Failed");
@@ -99,14 +109,20 @@ public class CloudFormationPostBuildNotifier extends Notifier {
     protected CloudFormation newCloudFormation(final PostBuildStackBean postBuildStackBean,
                                                final AbstractBuild<?, ?> build,
                                                final EnvVars env,
-                                               final PrintStream logger) throws IOException {
-
-        return new CloudFormation(logger, postBuildStackBean.getStackName(), postBuildStackBean.getOutputPrefixName(),
-                                  build.getWorkspace()
-                                       .child(postBuildStackBean.getCloudFormationRecipe())
-                                       .readToString(), postBuildStackBean.getParsedParameters(env), postBuildStackBean.getTimeout(),
-                                  postBuildStackBean.getParsedAwsAccessKey(env), postBuildStackBean.getParsedAwsSecretKey(env),
-                                  postBuildStackBean.getParsedAwsRegion(env), env, false, postBuildStackBean.getSleep());
+                                               final PrintStream logger) throws IOException, InterruptedException {
+
+        final TemplateCache.Template template = TemplateCache.get()
+                                                             .load(build.getWorkspace()
+                                                                        .child(postBuildStackBean.getCloudFormationRecipe()));
+        final CloudFormation cloudFormation = new CloudFormation(logger, postBuildStackBean.getStackName(), postBuildStackBean.getOutputPrefixName(),
+                                                                 template.getBody(), postBuildStackBean.getParsedParameters(env, build.getWorkspace()),
+                                                                 postBuildStackBean.getTimeout(), postBuildStackBean.getParsedAwsAccessKey(env),
+                                                                 postBuildStackBean.getParsedAwsSecretKey(env), postBuildStackBean.getParsedAwsRegion(env), env,
+                                                                 false, postBuildStackBean.getSleep());
+        cloudFormation.setPollingStrategy(postBuildStackBean.getPollingStrategy());
+        cloudFormation.setReuse(postBuildStackBean.getReuseStack(), build.getExternalizableId());
+        cloudFormation.setAbortPolicy(postBuildStackBean.getParsedAbortPolicy());
+        return cloudFormation;
 
     }
 
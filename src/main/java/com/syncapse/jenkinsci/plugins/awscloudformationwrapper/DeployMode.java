@@ -0,0 +1,22 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+/**
+ * What to do with a stack that already exists when deploying it.
+ */
+public enum DeployMode {
+    CREATE("Always create a new stack"),
+    CREATE_OR_UPDATE("Update the stack if it exists, skipping it when unchanged");
+
+    public final String readableName;
+
+    private DeployMode(final String readableName) {
+
+        this.readableName = readableName;
+    }
+
+    public static DeployMode getDefault() {
+
+        return CREATE;
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Checks often right after the operation started, so short lived stacks are detected quickly, then backs off
+ * exponentially up to a maximum interval so long lived stacks do not flood the CloudFormation API.
+ *
+ * Every delay is jittered so that builds started together do not keep polling in lock step. Whenever the stack moves to
+ * a different in-progress status (e.g. from CREATE_IN_PROGRESS to ROLLBACK_IN_PROGRESS) the delay falls back to the
+ * initial interval, as the terminal status is usually close by then.
+ */
+public class ExponentialBackoffPollingStrategy extends PollingStrategy {
+
+    public static final long DEFAULT_INITIAL_INTERVAL = 2;
+    public static final long DEFAULT_MAX_INTERVAL = 90;
+    public static final double DEFAULT_MULTIPLIER = 1.5;
+
+    /**
+     * Seconds to wait before the second status check.
+     */
+    private final long initialInterval;
+
+    /**
+     * Upper bound, in seconds, of the wait between two status checks.
+     */
+    private final long maxInterval;
+
+    /**
+     * Growth factor applied to the wait after every status check.
+     */
+    private final double multiplier;
+
+    @DataBoundConstructor
+    public ExponentialBackoffPollingStrategy(final long initialInterval, final long maxInterval, final double multiplier) {
+
+        this.initialInterval = initialInterval > 0 ? initialInterval : DEFAULT_INITIAL_INTERVAL;
+        this.maxInterval = maxInterval >= this.initialInterval ? maxInterval : Math.max(DEFAULT_MAX_INTERVAL, this.initialInterval);
+        this.multiplier = multiplier >= 1 ? multiplier : DEFAULT_MULTIPLIER;
+    }
+
+    public long getInitialInterval() {
+
+        return initialInterval;
+    }
+
+    public long getMaxInterval() {
+
+        return maxInterval;
+    }
+
+    public double getMultiplier() {
+
+        return multiplier;
+    }
+
+    @Override
+    public Schedule newSchedule() {
+
+        return new BackoffSchedule(TimeUnit.SECONDS.toMillis(initialInterval), TimeUnit.SECONDS.toMillis(maxInterval), multiplier);
+    }
+
+    static final class BackoffSchedule implements Schedule {
+
+        private final long initialDelay;
+        private final long maxDelay;
+        private final double multiplier;
+        private final Random random = new Random();
+        private double delay;
+        private String lastStatus;
+
+        BackoffSchedule(final long initialDelay, final long maxDelay, final double multiplier) {
+
+            this.initialDelay = initialDelay;
+            this.maxDelay = maxDelay;
+            this.multiplier = multiplier;
+        }
+
+        public long nextDelay(final String stackStatus) {
+
+            if (lastStatus == null || !lastStatus.equals(stackStatus)) {
+                delay = initialDelay;
+            } else {
+                delay = Math.min(delay * multiplier, maxDelay);
+            }
+            lastStatus = stackStatus;
+
+            // "Equal jitter": never less than half the computed delay, never more than the delay itself.
+            final long half = (long) (delay / 2);
+            return half + (long) (random.nextDouble() * (delay - half));
+        }
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends Descriptor<PollingStrategy> {
+
+        @Override
+        public String getDisplayName() {
+
+            return "Exponential backoff";
+        }
+
+        public FormValidation doCheckInitialInterval(@AncestorInPath final AbstractProject<?, ?> project, @QueryParameter final String value)
+                throws IOException {
+
+            return checkPositiveNumber(value);
+        }
+
+        public FormValidation doCheckMaxInterval(@AncestorInPath final AbstractProject<?, ?> project, @QueryParameter final String value)
+                throws IOException {
+
+            return checkPositiveNumber(value);
+        }
+
+        public FormValidation doCheckMultiplier(@AncestorInPath final AbstractProject<?, ?> project, @QueryParameter final String value) throws IOException {
+
+            try {
+                if (Double.parseDouble(value) < 1) {
+                    return FormValidation.error("Multiplier must be at least 1.");
+                }
+            } catch (final NumberFormatException e) {
+                return FormValidation.error("Multiplier value " + value + " is not a number.");
+            }
+            return FormValidation.ok();
+        }
+
+        private FormValidation checkPositiveNumber(final String value) {
+
+            try {
+                if (Long.parseLong(value) < 1) {
+                    return FormValidation.error("Interval must be at least 1 second.");
+                }
+            } catch (final NumberFormatException e) {
+                return FormValidation.error("Interval value " + value + " is not a number.");
+            }
+            return FormValidation.ok();
+        }
+
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.stapler.AncestorInPath;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * Checks the stack status at a fixed interval. This is how the plugin always behaved before polling became
+ * configurable.
+ */
+public class FixedPollingStrategy extends PollingStrategy {
+
+    /**
+     * The shortest interval that can be configured. A blank field binds to 0, which would poll without pausing.
+     */
+    static final long MIN_INTERVAL = 1;
+
+    /**
+     * Seconds to wait between two status checks.
+     */
+    private final long interval;
+
+    @DataBoundConstructor
+    public FixedPollingStrategy(final long interval) {
+
+        this.interval = Math.max(MIN_INTERVAL, interval);
+    }
+
+    private FixedPollingStrategy() {
+
+        this.interval = 0;
+    }
+
+    /**
+     * @return a strategy checking again without waiting, for tests only.
+     */
+    static FixedPollingStrategy immediate() {
+
+        return new FixedPollingStrategy();
+    }
+
+    public long getInterval() {
+
+        return interval;
+    }
+
+    @Override
+    public Schedule newSchedule() {
+
+        final long delay = TimeUnit.SECONDS.toMillis(interval);
+        return new Schedule() {
+
+            public long nextDelay(final String stackStatus) {
+
+                return delay;
+            }
+        };
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends Descriptor<PollingStrategy> {
+
+        @Override
+        public String getDisplayName() {
+
+            return "Fixed interval";
+        }
+
+        public FormValidation doCheckInterval(@AncestorInPath final AbstractProject<?, ?> project, @QueryParameter final String value) throws IOException {
+
+            try {
+                if (Long.parseLong(value) < MIN_INTERVAL) {
+                    return FormValidation.error("Interval must be at least 1 second.");
+                }
+            } catch (final NumberFormatException e) {
+                return FormValidation.error("Interval value " + value + " is not a number.");
+            }
+            return FormValidation.ok();
+        }
+
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+/**
+ * The format the outputs of the stacks of a build step are written to the workspace in.
+ */
+public enum OutputFormat {
+    PROPERTIES("Java properties", "aws_stack_output.properties"),
+    JSON("JSON, one object per stack", "aws_stack_output.json"),
+    DOTENV("Shell variables (dotenv)", "aws_stack_output.env");
+
+    public final String readableName;
+    public final String fileName;
+
+    private OutputFormat(final String readableName, final String fileName) {
+
+        this.readableName = readableName;
+        this.fileName = fileName;
+    }
+
+    public static OutputFormat getDefault() {
+
+        return PROPERTIES;
+    }
+
+    /**
+     * @return the format with the given name, the default one if there is none.
+     */
+    public static OutputFormat parse(final String name) {
+
+        return name == null || name.isEmpty() ? getDefault() : valueOf(name);
+    }
+
+}
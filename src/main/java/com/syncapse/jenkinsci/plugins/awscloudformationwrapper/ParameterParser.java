@@ -0,0 +1,327 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+import net.sf.json.JSONSerializer;
+
+/**
+ * Compiles the parameters of a stack, configured as <code>key=value</code> pairs or read from a parameters file, into
+ * {@link Parameters} that only need their <code>${VAR}</code> references expanded for each build.
+ *
+ * Pairs are separated by semicolons, or by commas when there is no semicolon, and split at their first equals sign. A
+ * key or value starting with a double or single quote extends to the matching quote, separators and equals signs
+ * included, and keeps its spaces. Outside single quotes, a backslash escapes the next quote, backslash, semicolon,
+ * comma or equals sign. Other backslashes, and quotes inside a value, are kept as they are.
+ *
+ * Parameters files are either JSON, as a list of ParameterKey/ParameterValue objects like the AWS CLI takes or as an
+ * object of values by key, or Java properties. They are loaded through the {@link TemplateCache}, and compiled once per
+ * content.
+ */
+final class ParameterParser {
+
+    /**
+     * Maximum number of compiled parameters files kept.
+     */
+    private static final int MAX_FILES = Integer.getInteger(ParameterParser.class.getName() + ".maxFiles", 64);
+
+    private static final Map<String, Parameters> FILES = new LinkedHashMap<String, Parameters>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Parameters> eldest) {
+
+            return size() > MAX_FILES;
+        }
+    };
+
+    private ParameterParser() {
+
+    }
+
+    /**
+     * @throws IllegalArgumentException if a pair has no key, no equals sign or an unterminated quote.
+     */
+    static Parameters compile(final String text) {
+
+        if (text == null || text.trim()
+                                .isEmpty()) {
+            return Parameters.EMPTY;
+        }
+        Tokenizer tokenizer = new Tokenizer(text, ';');
+        if (!tokenizer.run()) {
+            tokenizer = new Tokenizer(text, ',');
+            tokenizer.run();
+        }
+        return tokenizer.getParameters();
+    }
+
+    /**
+     * @param file a parameters file, in a build workspace.
+     */
+    static Parameters load(final FilePath file) throws IOException, InterruptedException {
+
+        final TemplateCache.Template loaded = TemplateCache.get()
+                                                           .load(file);
+        synchronized (FILES) {
+            final Parameters cached = FILES.get(loaded.getHash());
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final Parameters parameters;
+        try {
+            parameters = compileFile(loaded.getBody());
+        } catch (final JSONException e) {
+            throw new IOException("Invalid parameters file " + file.getRemote() + ": " + e.getMessage(), e);
+        } catch (final ClassCastException e) {
+            throw new IOException("Invalid parameters file " + file.getRemote() + ": expected a list of ParameterKey/ParameterValue objects", e);
+        }
+        synchronized (FILES) {
+            FILES.put(loaded.getHash(), parameters);
+        }
+        return parameters;
+    }
+
+    /**
+     * @param parametersFile the path of a parameters file in the workspace, which may reference build variables. Null
+     *        or empty if there is none.
+     * @return the parameters of the file, overridden by the given ones, with the build variables they reference
+     *         expanded.
+     */
+    static Map<String, String> expand(final Parameters parameters, final String parametersFile, final FilePath workspace, final EnvVars env)
+            throws IOException, InterruptedException {
+
+        if (parametersFile == null || parametersFile.trim()
+                                                    .isEmpty()) {
+            return parameters.expand(env);
+        }
+        final Map<String, String> expanded = load(workspace.child(env.expand(parametersFile.trim()))).expand(env);
+        expanded.putAll(parameters.expand(env));
+        return expanded;
+    }
+
+    static Parameters compileFile(final String body) throws IOException {
+
+        final String trimmed = body.trim();
+        final List<Parameter> parameters = new ArrayList<Parameter>();
+        if (trimmed.startsWith("[")) {
+            for (final Object element : (JSONArray) JSONSerializer.toJSON(trimmed)) {
+                final JSONObject parameter = (JSONObject) element;
+                parameters.add(new Parameter(parameter.getString("ParameterKey"), parameter.optString("ParameterValue", "")));
+            }
+        } else if (trimmed.startsWith("{")) {
+            final JSONObject object = (JSONObject) JSONSerializer.toJSON(trimmed);
+            for (final Object key : object.keySet()) {
+                parameters.add(new Parameter((String) key, object.getString((String) key)));
+            }
+        } else {
+            final Properties properties = new Properties();
+            properties.load(new StringReader(body));
+            for (final String key : properties.stringPropertyNames()) {
+                parameters.add(new Parameter(key, properties.getProperty(key)));
+            }
+        }
+        return new Parameters(parameters);
+    }
+
+    /**
+     * Compiled parameters, which do not change once compiled.
+     */
+    static final class Parameters {
+
+        static final Parameters EMPTY = new Parameters(Collections.<Parameter> emptyList());
+
+        private final List<Parameter> parameters;
+
+        Parameters(final List<Parameter> parameters) {
+
+            this.parameters = parameters;
+        }
+
+        /**
+         * @return the parameters by key, with the build variables they reference expanded.
+         */
+        Map<String, String> expand(final EnvVars env) {
+
+            final Map<String, String> expanded = new LinkedHashMap<String, String>();
+            for (final Parameter parameter : parameters) {
+                expanded.put(parameter.key, parameter.variable ? env.expand(parameter.value) : parameter.value);
+            }
+            return expanded;
+        }
+    }
+
+    private static final class Parameter {
+
+        private final String key;
+        private final String value;
+        /**
+         * Whether the value may reference a variable, which values without a dollar sign cannot.
+         */
+        private final boolean variable;
+
+        Parameter(final String key, final String value) {
+
+            this.key = key;
+            this.value = value;
+            this.variable = value.indexOf('$') >= 0;
+        }
+    }
+
+    /**
+     * Splits parameters in a single pass over them, with the given separator.
+     */
+    private static final class Tokenizer {
+
+        private final String text;
+        private final char separator;
+        private final List<Parameter> parameters = new ArrayList<Parameter>();
+        private final Token token = new Token();
+        private String key;
+        private String error;
+        private boolean separated;
+
+        Tokenizer(final String text, final char separator) {
+
+            this.text = text;
+            this.separator = separator;
+        }
+
+        /**
+         * @return whether the separator was found.
+         */
+        boolean run() {
+
+            char quote = 0;
+            for (int i = 0; i < text.length(); i++) {
+                final char c = text.charAt(i);
+                final boolean escaped = c == '\\' && quote != '\'' && i + 1 < text.length() && isEscapable(text.charAt(i + 1));
+                if (escaped) {
+                    token.keep(text.charAt(++i));
+                } else if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                        token.quote();
+                    } else {
+                        token.keep(c);
+                    }
+                } else if ((c == '"' || c == '\'') && token.isEmpty()) {
+                    quote = c;
+                    token.quote();
+                } else if (c == '=' && key == null) {
+                    key = token.take();
+                } else if (c == separator) {
+                    separated = true;
+                    endPair();
+                } else {
+                    token.append(c);
+                }
+            }
+            if (quote != 0) {
+                fail("unterminated quote");
+            }
+            endPair();
+            return separated;
+        }
+
+        Parameters getParameters() {
+
+            if (error != null) {
+                throw new IllegalArgumentException("Invalid stack parameters: " + error);
+            }
+            return new Parameters(parameters);
+        }
+
+        private void endPair() {
+
+            if (key == null) {
+                if (!token.isEmpty()) {
+                    fail("no equals sign after " + token.take());
+                }
+            } else if (key.isEmpty()) {
+                fail("missing key");
+            } else {
+                parameters.add(new Parameter(key, token.take()));
+            }
+            key = null;
+        }
+
+        private void fail(final String message) {
+
+            if (error == null) {
+                error = message;
+            }
+        }
+
+        private static boolean isEscapable(final char c) {
+
+            return c == '\\' || c == '"' || c == '\'' || c == '=' || c == ';' || c == ',';
+        }
+    }
+
+    /**
+     * A key or value being read, whose surrounding spaces are dropped unless quoted or escaped.
+     */
+    private static final class Token {
+
+        private final StringBuilder text = new StringBuilder();
+        /**
+         * The length of the text ending with its last quoted or escaped character, which trailing spaces are trimmed to.
+         */
+        private int kept;
+        private boolean quoted;
+
+        void append(final char c) {
+
+            if (text.length() == 0 && !quoted && Character.isWhitespace(c)) {
+                return;
+            }
+            text.append(c);
+        }
+
+        void keep(final char c) {
+
+            text.append(c);
+            kept = text.length();
+        }
+
+        void quote() {
+
+            quoted = true;
+            kept = text.length();
+        }
+
+        boolean isEmpty() {
+
+            return text.length() == 0 && !quoted;
+        }
+
+        String take() {
+
+            int end = text.length();
+            while (end > kept && Character.isWhitespace(text.charAt(end - 1))) {
+                end--;
+            }
+            final String taken = text.substring(0, end);
+            text.setLength(0);
+            kept = 0;
+            quoted = false;
+            return taken;
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.DescriptorExtensionList;
+import hudson.ExtensionPoint;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import jenkins.model.Jenkins;
+
+/**
+ * Decides how long to wait between two consecutive status checks of a stack while it is being created or deleted.
+ *
+ * A strategy is part of the job configuration, so it must not hold any state of its own. Every wait loop asks for a
+ * fresh {@link Schedule} which tracks the progress of that single wait.
+ */
+public abstract class PollingStrategy extends AbstractDescribableImpl<PollingStrategy> implements ExtensionPoint {
+
+    /**
+     * @return a new schedule, to be used for exactly one wait loop.
+     */
+    public abstract Schedule newSchedule();
+
+    /**
+     * The strategy used when a stack has not been configured with one, e.g. jobs saved by older versions of the plugin.
+     */
+    public static PollingStrategy getDefault() {
+
+        return new ExponentialBackoffPollingStrategy(ExponentialBackoffPollingStrategy.DEFAULT_INITIAL_INTERVAL,
+                                                     ExponentialBackoffPollingStrategy.DEFAULT_MAX_INTERVAL,
+                                                     ExponentialBackoffPollingStrategy.DEFAULT_MULTIPLIER);
+    }
+
+    public static DescriptorExtensionList<PollingStrategy, Descriptor<PollingStrategy>> all() {
+
+        return Jenkins.getInstance()
+                      .<PollingStrategy, Descriptor<PollingStrategy>> getDescriptorList(PollingStrategy.class);
+    }
+
+    /**
+     * The delays of a single wait loop.
+     */
+    public interface Schedule {
+
+        /**
+         * Called after every status check that found the stack still in progress. The loop never asks for a delay
+         * once the stack reached a terminal status, so there is no need to handle those here.
+         *
+         * @param stackStatus the status returned by the last check.
+         * @return the number of milliseconds to wait before the next check.
+         */
+        long nextDelay(String stackStatus);
+    }
+
+}
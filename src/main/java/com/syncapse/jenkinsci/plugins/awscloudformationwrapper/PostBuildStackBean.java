@@ -2,6 +2,7 @@ package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
 
 import hudson.EnvVars;
 import hudson.Extension;
+import hudson.FilePath;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.AbstractProject;
 import hudson.model.Descriptor;
@@ -9,7 +10,6 @@ import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 
 import org.kohsuke.stapler.AncestorInPath;
@@ -68,9 +68,46 @@ public class PostBuildStackBean extends AbstractDescribableImpl<PostBuildStackBe
 
     private final String awsRegion;
 
+    /**
+     * How often to check the status of the stack while waiting for it.
+     */
+    private final PollingStrategy pollingStrategy;
+
+    /**
+     * The name of the {@link DeployMode} to deploy the stack with.
+     */
+    private final String deployMode;
+
+    /**
+     * Whether to reuse the stack created from the same template with the same parameters by an earlier build.
+     */
+    private final boolean reuseStack;
+
+    /**
+     * Whether to let the build go on while the stack is created, instead of waiting for it.
+     */
+    private final boolean background;
+
+    /**
+     * The name of the {@link AbortPolicy} applied to the stack when the build is aborted while creating it.
+     */
+    private final String abortPolicy;
+
+    /**
+     * The path of a file of the workspace holding more parameters, which those of {@link #parameters} override.
+     */
+    private final String parametersFile;
+
+    /**
+     * The {@link #parameters}, compiled on first use.
+     */
+    private transient volatile ParameterParser.Parameters compiledParameters;
+
     @DataBoundConstructor
     public PostBuildStackBean(final String stackName, final String outputPrefixName, final String description, final String cloudFormationRecipe,
-            final String parameters, final long timeout, final String awsAccessKey, final String awsSecretKey, final String awsRegion, final long sleep) {
+            final String parameters, final long timeout, final String awsAccessKey, final String awsSecretKey, final String awsRegion, final long sleep,
+            final PollingStrategy pollingStrategy, final String deployMode, final boolean reuseStack, final boolean background,
+            final String abortPolicy, final String parametersFile) {
 
         super();
         this.stackName = stackName;
@@ -83,6 +120,19 @@ public class PostBuildStackBean extends AbstractDescribableImpl<PostBuildStackBe
         this.awsSecretKey = awsSecretKey;
         this.sleep = sleep;
         this.awsRegion = awsRegion;
+        this.pollingStrategy = pollingStrategy;
+        this.deployMode = deployMode;
+        this.reuseStack = reuseStack;
+        this.background = background;
+        this.abortPolicy = abortPolicy;
+        this.parametersFile = parametersFile;
+    }
+
+    public PostBuildStackBean(final String stackName, final String outputPrefixName, final String description, final String cloudFormationRecipe,
+            final String parameters, final long timeout, final String awsAccessKey, final String awsSecretKey, final String awsRegion, final long sleep) {
+
+        this(stackName, outputPrefixName, description, cloudFormationRecipe, parameters, timeout, awsAccessKey, awsSecretKey, awsRegion, sleep,
+             null, null, false, false, null, null);
     }
 
     public String getStackName() {
@@ -135,34 +185,74 @@ public class PostBuildStackBean extends AbstractDescribableImpl<PostBuildStackBe
         return awsRegion;
     }
 
+    public PollingStrategy getPollingStrategy() {
+
+        return pollingStrategy != null ? pollingStrategy : PollingStrategy.getDefault();
+    }
+
+    public String getDeployMode() {
+
+        return deployMode;
+    }
+
+    public DeployMode getParsedDeployMode() {
+
+        return deployMode == null || deployMode.isEmpty() ? DeployMode.getDefault() : DeployMode.valueOf(deployMode);
+    }
+
+    public boolean getReuseStack() {
+
+        return reuseStack;
+    }
+
+    public boolean getBackground() {
+
+        return background;
+    }
+
+    public String getAbortPolicy() {
+
+        return abortPolicy;
+    }
+
+    public AbortPolicy getParsedAbortPolicy() {
+
+        return AbortPolicy.parse(abortPolicy);
+    }
+
     public Region getParsedAwsRegion(final EnvVars env) {
 
         final String regionName = getParsedValue(env, awsRegion);
         return Region.getFromShortName(regionName);
     }
 
+    public String getParametersFile() {
+
+        return parametersFile;
+    }
+
     public Map<String, String> getParsedParameters(final EnvVars env) {
 
-        if (parameters == null || parameters.isEmpty())
-            return new HashMap<String, String>();
+        return getCompiledParameters().expand(env);
+    }
 
-        final Map<String, String> result = new HashMap<String, String>();
-        String token[] = null;
+    /**
+     * @return the parameters, with those of the parameters file of the given workspace they do not override.
+     */
+    public Map<String, String> getParsedParameters(final EnvVars env, final FilePath workspace) throws IOException, InterruptedException {
 
-        // semicolon delimited list
-        if (parameters.contains(";")) {
-            for (final String param : parameters.split(";")) {
-                token = param.split("=");
-                result.put(token[0].trim(), env.expand(token[1].trim()));
-            }
-        } else {
-            // comma delimited parameter list
-            for (final String param : parameters.split(",")) {
-                token = param.split("=");
-                result.put(token[0].trim(), env.expand(token[1].trim()));
-            }
+        return ParameterParser.expand(getCompiledParameters(), parametersFile, workspace, env);
+    }
+
+    private ParameterParser.Parameters getCompiledParameters() {
+
+        // Configuring the stack again replaces the bean, so the parameters never change once compiled.
+        ParameterParser.Parameters compiled = compiledParameters;
+        if (compiled == null) {
+            compiled = ParameterParser.compile(parameters);
+            compiledParameters = compiled;
         }
-        return result;
+        return compiled;
     }
 
     public String getParsedValue(final EnvVars env, final String value) {
@@ -230,6 +320,16 @@ public class PostBuildStackBean extends AbstractDescribableImpl<PostBuildStackBe
             return FormValidation.ok();
         }
 
+        public FormValidation doCheckParameters(@AncestorInPath final AbstractProject<?, ?> project, @QueryParameter final String value) throws IOException {
+
+            try {
+                ParameterParser.compile(value);
+            } catch (final IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
+            return FormValidation.ok();
+        }
+
         public FormValidation doCheckAwsAccessKey(@AncestorInPath final AbstractProject<?, ?> project, @QueryParameter final String value) throws IOException {
 
             if (0 == value.length()) {
@@ -255,6 +355,24 @@ public class PostBuildStackBean extends AbstractDescribableImpl<PostBuildStackBe
             return items;
         }
 
+        public ListBoxModel doFillDeployModeItems() {
+
+            final ListBoxModel items = new ListBoxModel();
+            for (final DeployMode mode : DeployMode.values()) {
+                items.add(mode.readableName, mode.name());
+            }
+            return items;
+        }
+
+        public ListBoxModel doFillAbortPolicyItems() {
+
+            final ListBoxModel items = new ListBoxModel();
+            for (final AbortPolicy policy : AbortPolicy.values()) {
+                items.add(policy.readableName, policy.name());
+            }
+            return items;
+        }
+
     }
 
 }
@@ -0,0 +1,160 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * How long the resources of a stack took during one operation, as computed by {@link StackEventAnalyzer}. Saved with
+ * the {@link StackTiming} of the operation.
+ */
+public final class ResourceTimingReport {
+
+    private final List<ResourceTiming> resources;
+    private final List<ResourceTiming> criticalPath;
+    private final List<ResourceTypeTiming> slowestTypes;
+
+    ResourceTimingReport(final List<ResourceTiming> resources, final List<ResourceTiming> criticalPath, final List<ResourceTypeTiming> slowestTypes) {
+
+        this.resources = resources;
+        this.criticalPath = criticalPath;
+        this.slowestTypes = slowestTypes;
+    }
+
+    /**
+     * @return the resources that completed or failed, in the order they started.
+     */
+    public List<ResourceTiming> getResources() {
+
+        return Collections.unmodifiableList(resources);
+    }
+
+    /**
+     * @return the chain of resources that determined how long the operation took, first started first.
+     */
+    public List<ResourceTiming> getCriticalPath() {
+
+        return Collections.unmodifiableList(criticalPath);
+    }
+
+    /**
+     * @return the resource types whose slowest resource took the longest, slowest first.
+     */
+    public List<ResourceTypeTiming> getSlowestTypes() {
+
+        return Collections.unmodifiableList(slowestTypes);
+    }
+
+    /**
+     * @return the time from the start of the first resource of the critical path to the end of the last one.
+     */
+    public long getCriticalPathMillis() {
+
+        if (criticalPath.isEmpty()) {
+            return 0;
+        }
+        return criticalPath.get(criticalPath.size() - 1)
+                           .getCompletedAt() - criticalPath.get(0)
+                                                           .getStartedAt();
+    }
+
+    public static final class ResourceTiming {
+
+        private final String logicalResourceId;
+        private final String resourceType;
+        private final long startedAt;
+        private long completedAt;
+        private String status;
+
+        ResourceTiming(final String logicalResourceId, final String resourceType, final long startedAt) {
+
+            this.logicalResourceId = logicalResourceId;
+            this.resourceType = resourceType;
+            this.startedAt = startedAt;
+        }
+
+        void complete(final long completedAt, final String status) {
+
+            this.completedAt = completedAt;
+            this.status = status;
+        }
+
+        boolean isCompleted() {
+
+            return status != null;
+        }
+
+        public String getLogicalResourceId() {
+
+            return logicalResourceId;
+        }
+
+        public String getResourceType() {
+
+            return resourceType;
+        }
+
+        public long getStartedAt() {
+
+            return startedAt;
+        }
+
+        public long getCompletedAt() {
+
+            return completedAt;
+        }
+
+        /**
+         * @return the terminal status of the resource, e.g. CREATE_COMPLETE.
+         */
+        public String getStatus() {
+
+            return status;
+        }
+
+        public long getDurationMillis() {
+
+            return completedAt - startedAt;
+        }
+    }
+
+    public static final class ResourceTypeTiming {
+
+        private final String resourceType;
+        private int count;
+        private long totalMillis;
+        private long maxMillis;
+
+        ResourceTypeTiming(final String resourceType) {
+
+            this.resourceType = resourceType;
+        }
+
+        void add(final ResourceTiming resource) {
+
+            count++;
+            totalMillis += resource.getDurationMillis();
+            maxMillis = Math.max(maxMillis, resource.getDurationMillis());
+        }
+
+        public String getResourceType() {
+
+            return resourceType;
+        }
+
+        public int getCount() {
+
+            return count;
+        }
+
+        public long getTotalMillis() {
+
+            return totalMillis;
+        }
+
+        public long getMaxMillis() {
+
+            return maxMillis;
+        }
+    }
+
+}
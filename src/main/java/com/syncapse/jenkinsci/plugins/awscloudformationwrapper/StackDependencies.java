@@ -0,0 +1,162 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Dependencies between the stacks of a {@link CloudFormationBuildWrapper}.
+ *
+ * A stack depends on an earlier stack of the list when it references one of its outputs, i.e. a variable prefixed with
+ * the expanded name or the output prefix of the earlier stack (see {@link CloudFormation#getOutputs()}). Only earlier
+ * stacks are considered, as those are the only outputs that were ever available to a stack, which also guarantees the
+ * graph has no cycles.
+ *
+ * The variables of a parameters file are read from the file in the workspace. A stack whose parameters file cannot be
+ * read before the stacks are created, e.g. because its path references outputs, depends on every earlier stack.
+ *
+ * Stacks are identified by their index in the list.
+ */
+final class StackDependencies {
+
+    /**
+     * Matches $VAR and ${VAR}, the way {@link EnvVars#expand(String)} does.
+     */
+    private static final Pattern VARIABLE = Pattern.compile("\\$\\{([^}]+)\\}|\\$([A-Za-z0-9_]+)");
+
+    private final List<Set<Integer>> dependencies = new ArrayList<Set<Integer>>();
+    private final List<Set<Integer>> dependents = new ArrayList<Set<Integer>>();
+
+    /**
+     * @param workspace where the parameters files are, null if there is none.
+     */
+    StackDependencies(final List<StackBean> stacks, final EnvVars env, final FilePath workspace) throws InterruptedException {
+
+        final List<List<String>> prefixes = new ArrayList<List<String>>();
+        for (final StackBean stack : stacks) {
+            final List<String> stackPrefixes = new ArrayList<String>();
+            stackPrefixes.add(env.expand(stack.getStackName()) + "_");
+            if (stack.getOutputPrefixName() != null && !stack.getOutputPrefixName()
+                                                                .isEmpty()) {
+                stackPrefixes.add(stack.getOutputPrefixName() + "_");
+            }
+            prefixes.add(stackPrefixes);
+            dependencies.add(new TreeSet<Integer>());
+            dependents.add(new TreeSet<Integer>());
+        }
+
+        for (int i = 0; i < stacks.size(); i++) {
+            final Set<String> variables = referencedVariables(stacks.get(i));
+            final boolean readable = addFileVariables(stacks.get(i), env, workspace, variables);
+            for (final String variable : variables) {
+                for (int j = 0; j < i; j++) {
+                    if (startsWithAny(variable, prefixes.get(j))) {
+                        dependencies.get(i)
+                                    .add(j);
+                        dependents.get(j)
+                                  .add(i);
+                    }
+                }
+            }
+            if (!readable) {
+                for (int j = 0; j < i; j++) {
+                    dependencies.get(i)
+                                .add(j);
+                    dependents.get(j)
+                              .add(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of stacks.
+     */
+    int size() {
+
+        return dependencies.size();
+    }
+
+    /**
+     * @return the stacks whose outputs the given stack needs.
+     */
+    Set<Integer> getDependencies(final int stack) {
+
+        return Collections.unmodifiableSet(dependencies.get(stack));
+    }
+
+    /**
+     * @return the stacks that need the outputs of the given stack.
+     */
+    Set<Integer> getDependents(final int stack) {
+
+        return Collections.unmodifiableSet(dependents.get(stack));
+    }
+
+    private static Set<String> referencedVariables(final StackBean stack) {
+
+        final Set<String> variables = new TreeSet<String>();
+        for (final String value : new String[] { stack.getParameters(), stack.getParametersFile(), stack.getStackName(), stack.getAwsRegion(),
+                stack.getAwsAccessKey(), stack.getAwsSecretKey() }) {
+            addVariables(value, variables);
+        }
+        return variables;
+    }
+
+    /**
+     * Add the variables referenced in the parameters file of the given stack, if it has one.
+     *
+     * @return false if the file could not be read.
+     */
+    private static boolean addFileVariables(final StackBean stack, final EnvVars env, final FilePath workspace, final Set<String> variables)
+            throws InterruptedException {
+
+        final String parametersFile = stack.getParametersFile();
+        if (parametersFile == null || parametersFile.trim()
+                                                    .isEmpty()) {
+            return true;
+        }
+        if (workspace == null) {
+            return false;
+        }
+        try {
+            // Read through the cache, so that the creation of the stack does not read the file again.
+            addVariables(TemplateCache.get()
+                                      .load(workspace.child(env.expand(parametersFile.trim())))
+                                      .getBody(), variables);
+            return true;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    private static void addVariables(final String value, final Set<String> variables) {
+
+        if (value == null) {
+            return;
+        }
+        final Matcher matcher = VARIABLE.matcher(value);
+        while (matcher.find()) {
+            variables.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+        }
+    }
+
+    private static boolean startsWithAny(final String variable, final List<String> prefixes) {
+
+        for (final String prefix : prefixes) {
+            if (variable.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.amazonaws.services.cloudformation.model.StackEvent;
+import com.syncapse.jenkinsci.plugins.awscloudformationwrapper.ResourceTimingReport.ResourceTiming;
+import com.syncapse.jenkinsci.plugins.awscloudformationwrapper.ResourceTimingReport.ResourceTypeTiming;
+
+/**
+ * Works out from the events of a stack how long each of its resources took, from its first *_IN_PROGRESS event to its
+ * *_COMPLETE or *_FAILED one, and which of them made the operation as long as it was.
+ *
+ * Events do not tell which resources a resource depends on, but CloudFormation starts a resource as soon as its
+ * dependencies are complete. The critical path is therefore found backwards from the resource that completed last,
+ * taking as the predecessor of each resource the one that completed last before it started.
+ *
+ * Events must be added oldest first, as {@link StackEventTailer} does. Not thread safe, like the tailer.
+ */
+final class StackEventAnalyzer {
+
+    private static final int TOP_RESOURCE_TYPES = Integer.getInteger(StackEventAnalyzer.class.getName() + ".topResourceTypes", 5);
+
+    private static final String STACK_RESOURCE_TYPE = "AWS::CloudFormation::Stack";
+
+    private final String stackName;
+    private final Map<String, ResourceTiming> resources = new LinkedHashMap<String, ResourceTiming>();
+
+    /**
+     * @param stackName the name of the stack, whose own events are not about a resource.
+     */
+    StackEventAnalyzer(final String stackName) {
+
+        this.stackName = stackName;
+    }
+
+    void add(final StackEvent event) {
+
+        final String logicalId = event.getLogicalResourceId();
+        final String status = event.getResourceStatus();
+        if (logicalId == null || status == null || event.getTimestamp() == null) {
+            return;
+        }
+        if (STACK_RESOURCE_TYPE.equals(event.getResourceType()) && logicalId.equals(stackName)) {
+            return;
+        }
+        final long timestamp = event.getTimestamp()
+                                    .getTime();
+        final ResourceTiming resource = resources.get(logicalId);
+        if (status.endsWith("_IN_PROGRESS")) {
+            // Resources report being in progress more than once, e.g. again once their creation is initiated.
+            if (resource == null) {
+                resources.put(logicalId, new ResourceTiming(logicalId, event.getResourceType(), timestamp));
+            }
+        } else if (status.endsWith("_COMPLETE") || status.endsWith("_FAILED")) {
+            if (resource != null && !resource.isCompleted()) {
+                resource.complete(timestamp, status);
+            }
+        }
+    }
+
+    /**
+     * @return the report of the events added so far, null if no resource completed.
+     */
+    ResourceTimingReport report() {
+
+        final List<ResourceTiming> completed = new ArrayList<ResourceTiming>();
+        for (final ResourceTiming resource : resources.values()) {
+            if (resource.isCompleted()) {
+                completed.add(resource);
+            }
+        }
+        if (completed.isEmpty()) {
+            return null;
+        }
+        return new ResourceTimingReport(completed, criticalPath(completed), slowestTypes(completed));
+    }
+
+    private static List<ResourceTiming> criticalPath(final List<ResourceTiming> completed) {
+
+        final List<ResourceTiming> path = new ArrayList<ResourceTiming>();
+        final Set<ResourceTiming> visited = new HashSet<ResourceTiming>();
+        ResourceTiming current = lastCompletedBefore(completed, Long.MAX_VALUE, visited);
+        while (current != null) {
+            path.add(current);
+            visited.add(current);
+            current = lastCompletedBefore(completed, current.getStartedAt(), visited);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private static ResourceTiming lastCompletedBefore(final List<ResourceTiming> completed, final long time, final Set<ResourceTiming> excluded) {
+
+        ResourceTiming last = null;
+        for (final ResourceTiming resource : completed) {
+            if (resource.getCompletedAt() <= time && !excluded.contains(resource)
+                && (last == null || resource.getCompletedAt() > last.getCompletedAt())) {
+                last = resource;
+            }
+        }
+        return last;
+    }
+
+    private static List<ResourceTypeTiming> slowestTypes(final List<ResourceTiming> completed) {
+
+        final Map<String, ResourceTypeTiming> types = new LinkedHashMap<String, ResourceTypeTiming>();
+        for (final ResourceTiming resource : completed) {
+            ResourceTypeTiming type = types.get(resource.getResourceType());
+            if (type == null) {
+                type = new ResourceTypeTiming(resource.getResourceType());
+                types.put(resource.getResourceType(), type);
+            }
+            type.add(resource);
+        }
+        final List<ResourceTypeTiming> sorted = new ArrayList<ResourceTypeTiming>(types.values());
+        Collections.sort(sorted, new Comparator<ResourceTypeTiming>() {
+
+            public int compare(final ResourceTypeTiming a, final ResourceTypeTiming b) {
+
+                return a.getMaxMillis() < b.getMaxMillis() ? 1 : a.getMaxMillis() > b.getMaxMillis() ? -1 : 0;
+            }
+        });
+        return new ArrayList<ResourceTypeTiming>(sorted.subList(0, Math.min(TOP_RESOURCE_TYPES, sorted.size())));
+    }
+
+}
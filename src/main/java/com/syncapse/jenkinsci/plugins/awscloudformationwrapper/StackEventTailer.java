@@ -0,0 +1,120 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsResult;
+import com.amazonaws.services.cloudformation.model.StackEvent;
+
+/**
+ * Prints the events of a stack as they happen, oldest first, optionally passing them on to a {@link StackEventAnalyzer}.
+ *
+ * CloudFormation returns events newest first, so every call only reads pages until it reaches the last event it already
+ * printed. At most {@link #MAX_EVENTS} events are read per call, which bounds memory even for stacks with a long
+ * history.
+ *
+ * Not thread safe: calls must not overlap, which is the case for the successive polls of a stack.
+ */
+final class StackEventTailer {
+
+    static final int MAX_EVENTS = 1000;
+
+    private final PrintStream logger;
+    private final StackEventAnalyzer analyzer;
+    private String lastEventId;
+
+    StackEventTailer(final PrintStream logger) {
+
+        this(logger, null);
+    }
+
+    /**
+     * @param analyzer receives the printed events too, may be null.
+     */
+    StackEventTailer(final PrintStream logger, final StackEventAnalyzer analyzer) {
+
+        this.logger = logger;
+        this.analyzer = analyzer;
+    }
+
+    StackEventAnalyzer getAnalyzer() {
+
+        return analyzer;
+    }
+
+    /**
+     * Remember the newest event of the stack without printing anything, so that only the events of the operation about
+     * to start get printed.
+     */
+    void skipExisting(final AmazonCloudFormation client, final String stack) {
+
+        final List<StackEvent> events = describe(client, stack, null).getStackEvents();
+        if (events != null && !events.isEmpty()) {
+            lastEventId = events.get(0)
+                                .getEventId();
+        }
+    }
+
+    /**
+     * Print the events that happened since the last call.
+     */
+    void tail(final AmazonCloudFormation client, final String stack) {
+
+        final List<StackEvent> newEvents = new ArrayList<StackEvent>();
+        boolean caughtUp = false;
+        String nextToken = null;
+
+        do {
+            final DescribeStackEventsResult result = describe(client, stack, nextToken);
+            if (result.getStackEvents() != null) {
+                for (final StackEvent event : result.getStackEvents()) {
+                    if (event.getEventId() != null && event.getEventId()
+                                                           .equals(lastEventId)) {
+                        caughtUp = true;
+                        break;
+                    }
+                    newEvents.add(event);
+                    if (newEvents.size() == MAX_EVENTS) {
+                        break;
+                    }
+                }
+            }
+            nextToken = result.getNextToken();
+        } while (!caughtUp && nextToken != null && newEvents.size() < MAX_EVENTS);
+
+        if (newEvents.isEmpty()) {
+            return;
+        }
+
+        if (!caughtUp && newEvents.size() == MAX_EVENTS) {
+            logger.println("... earlier events omitted ...");
+        }
+
+        lastEventId = newEvents.get(0)
+                               .getEventId();
+
+        Collections.reverse(newEvents);
+        for (final StackEvent event : newEvents) {
+            logger.println(format(event));
+            if (analyzer != null) {
+                analyzer.add(event);
+            }
+        }
+    }
+
+    static String format(final StackEvent event) {
+
+        return event.getEventId() + " - " + event.getResourceType() + " - " + event.getResourceStatus() + " - " + event.getResourceStatusReason();
+    }
+
+    private static DescribeStackEventsResult describe(final AmazonCloudFormation client, final String stack, final String nextToken) {
+
+        return client.describeStackEvents(new DescribeStackEventsRequest().withStackName(stack)
+                                                                          .withNextToken(nextToken));
+    }
+
+}
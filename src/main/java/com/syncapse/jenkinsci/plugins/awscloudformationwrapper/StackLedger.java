@@ -0,0 +1,301 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.util.Secret;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+/**
+ * The stacks that builds created and have not torn down yet, kept in the Jenkins home so that they survive a restart,
+ * one XML file per stack so that recording a stack only writes that stack. A build running when Jenkins stops is not
+ * resumed, so its stacks would never be torn down: on startup, the stacks left in the ledger are deleted, polling until
+ * they are gone.
+ *
+ * Only stacks deleted automatically at the end of their build are recorded.
+ */
+public final class StackLedger {
+
+    private static final Logger LOGGER = Logger.getLogger(StackLedger.class.getName());
+
+    static final String CREATE = "create";
+    static final String CREATED = "created";
+    static final String DELETE = "delete";
+
+    private static StackLedger instance;
+
+    /**
+     * The file all the entries were saved in before, read once to move them to their own files.
+     */
+    private final XmlFile legacyFile;
+
+    private final File directory;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    /**
+     * @param directory where the entries are saved, null to keep them in memory only.
+     */
+    StackLedger(final File directory) {
+
+        this(directory, null);
+    }
+
+    private StackLedger(final File directory, final XmlFile legacyFile) {
+
+        this.directory = directory;
+        this.legacyFile = legacyFile;
+    }
+
+    static synchronized StackLedger get() {
+
+        if (instance == null) {
+            final Jenkins jenkins = Jenkins.getInstance();
+            if (jenkins == null) {
+                return new StackLedger(null);
+            }
+            instance = new StackLedger(new File(jenkins.getRootDir(), StackLedger.class.getName()),
+                                       new XmlFile(Jenkins.XSTREAM, new File(jenkins.getRootDir(), StackLedger.class.getName() + ".xml")));
+            instance.load();
+        }
+        return instance;
+    }
+
+    /**
+     * Record the given stack, replacing what was recorded about it before.
+     */
+    synchronized void record(final Entry entry) {
+
+        if (entry == null) {
+            return;
+        }
+        entries.put(entry.getKey(), entry);
+        save(entry);
+    }
+
+    /**
+     * Forget about the stack of the given build, once it is torn down or left on purpose.
+     */
+    synchronized void remove(final String buildId, final String stackName) {
+
+        final String key = key(buildId, stackName);
+        if (entries.remove(key) == null || directory == null) {
+            return;
+        }
+        final File entryFile = getFile(key).getFile();
+        if (!entryFile.delete()) {
+            LOGGER.warning("Failed to delete " + entryFile + " from the stack ledger");
+        }
+    }
+
+    synchronized List<Entry> getEntries() {
+
+        return new ArrayList<Entry>(entries.values());
+    }
+
+    /**
+     * Delete the stacks left by the builds that were running when Jenkins stopped.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void resume() {
+
+        final StackLedger ledger = get();
+        final List<Entry> left = ledger.getEntries();
+        if (left.isEmpty()) {
+            return;
+        }
+        LOGGER.info("Tearing down " + left.size() + " stacks left by builds interrupted by a restart");
+        final ExecutorService executor = Executors.newCachedThreadPool(new StackWaitScheduler.DaemonThreadFactory("CloudFormation stack ledger"));
+        for (final Entry entry : left) {
+            executor.submit(new Teardown(ledger, entry));
+        }
+        executor.shutdown();
+    }
+
+    private static String key(final String buildId, final String stackName) {
+
+        return buildId + '/' + stackName;
+    }
+
+    private void load() {
+
+        if (directory == null) {
+            return;
+        }
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File entryFile : files) {
+                if (!entryFile.getName()
+                              .endsWith(".xml")) {
+                    continue;
+                }
+                try {
+                    final Entry entry = (Entry) new XmlFile(Jenkins.XSTREAM, entryFile).read();
+                    entries.put(entry.getKey(), entry);
+                } catch (final IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to load " + entryFile + " from the stack ledger", e);
+                }
+            }
+        }
+        loadLegacyFile();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadLegacyFile() {
+
+        if (legacyFile == null || !legacyFile.exists()) {
+            return;
+        }
+        try {
+            for (final Entry entry : ((Map<String, Entry>) legacyFile.read()).values()) {
+                entries.put(entry.getKey(), entry);
+                save(entry);
+            }
+            if (!legacyFile.getFile()
+                           .delete()) {
+                LOGGER.warning("Failed to delete " + legacyFile + " once moved to " + directory);
+            }
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load the stack ledger from " + legacyFile, e);
+        }
+    }
+
+    private void save(final Entry entry) {
+
+        if (directory == null) {
+            return;
+        }
+        final XmlFile entryFile = getFile(entry.getKey());
+        try {
+            entryFile.write(entry);
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save " + entryFile + " to the stack ledger", e);
+        }
+    }
+
+    /**
+     * @return the file of the given entry, named after a digest of its key as build ids and stack names may not be
+     *         valid file names.
+     */
+    private XmlFile getFile(final String key) {
+
+        return new XmlFile(Jenkins.XSTREAM, new File(directory, Util.getDigestOf(key) + ".xml"));
+    }
+
+    /**
+     * A stack of a build, with what is needed to delete it.
+     */
+    static final class Entry {
+
+        /**
+         * The {@link hudson.model.Run#getExternalizableId() id} of the build.
+         */
+        private final String buildId;
+        private final String stackName;
+        private final String stackId;
+        private final String operation;
+        private final String awsAccessKey;
+        private final Secret awsSecretKey;
+        private final Region awsRegion;
+
+        Entry(final String buildId, final String stackName, final String stackId, final String operation, final String awsAccessKey,
+                final Secret awsSecretKey, final Region awsRegion) {
+
+            this.buildId = buildId;
+            this.stackName = stackName;
+            this.stackId = stackId;
+            this.operation = operation;
+            this.awsAccessKey = awsAccessKey;
+            this.awsSecretKey = awsSecretKey;
+            this.awsRegion = awsRegion;
+        }
+
+        String getKey() {
+
+            return key(buildId, stackName);
+        }
+
+        String getBuildId() {
+
+            return buildId;
+        }
+
+        String getStackName() {
+
+            return stackName;
+        }
+
+        String getStackId() {
+
+            return stackId;
+        }
+
+        String getOperation() {
+
+            return operation;
+        }
+
+        CloudFormation newCloudFormation(final PrintStream logger) {
+
+            final CloudFormation cloudFormation = new CloudFormation(logger, stackName, "", "", new HashMap<String, String>(), 0, awsAccessKey,
+                                                                     Secret.toString(awsSecretKey), awsRegion, true, new EnvVars(), false);
+            if (stackId != null) {
+                cloudFormation.adopt(stackId, Collections.<String, String> emptyMap());
+            }
+            return cloudFormation;
+        }
+    }
+
+    /**
+     * Deletes a stack left in the ledger. If it fails, the stack stays in the ledger, to be tried again on the next
+     * startup.
+     */
+    private static final class Teardown implements Runnable {
+
+        private final StackLedger ledger;
+        private final Entry entry;
+
+        Teardown(final StackLedger ledger, final Entry entry) {
+
+            this.ledger = ledger;
+            this.entry = entry;
+        }
+
+        public void run() {
+
+            LOGGER.info("Deleting stack " + entry.getStackName() + " of " + entry.getBuildId() + ", left at operation " + entry.getOperation());
+            try {
+                if (entry.newCloudFormation(new PrintStream(new NullOutputStream()))
+                         .delete()) {
+                    ledger.remove(entry.getBuildId(), entry.getStackName());
+                    return;
+                }
+            } catch (final RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to delete stack " + entry.getStackName() + " of " + entry.getBuildId(), e);
+                return;
+            }
+            LOGGER.warning("Failed to delete stack " + entry.getStackName() + " of " + entry.getBuildId()
+                           + ". Check in your amazon account to ensure you are not charged for it.");
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.FilePath;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+/**
+ * Writes the outputs of the stacks of a build to a file of the workspace, through the {@link FilePath} of the workspace
+ * so that the file ends up on the agent the build runs on.
+ *
+ * The outputs of every stack added are kept, and written at once when {@link #export(FilePath, OutputFormat)} is
+ * called. The file is first written next to its target under a temporary name, then renamed over it, so that a step
+ * reading it never sees it half written.
+ */
+final class StackOutputExporter {
+
+    private static final String ENCODING = "UTF-8";
+
+    private final Map<String, Map<String, String>> stackOutputs = new LinkedHashMap<String, Map<String, String>>();
+    private final Map<String, String> prefixedOutputs = new LinkedHashMap<String, String>();
+
+    /**
+     * Add the outputs of the given stack to the ones to export, replacing those of a stack with the same name.
+     */
+    void add(final StackOutputsAction.StackRecord stack) {
+
+        stackOutputs.put(stack.getStackName(), stack.getOutputs());
+        prefixedOutputs.putAll(stack.getPrefixedOutputs());
+    }
+
+    /**
+     * Write the outputs added so far to the file of the given format in the given directory.
+     *
+     * @return the file written.
+     */
+    FilePath export(final FilePath workspace, final OutputFormat format) throws IOException, InterruptedException {
+
+        final FilePath target = workspace.child(format.fileName);
+        final FilePath temp = workspace.createTempFile(format.fileName, ".tmp");
+        try {
+            temp.write(render(format), ENCODING);
+            temp.renameTo(target);
+        } finally {
+            if (temp.exists()) {
+                temp.delete();
+            }
+        }
+        return target;
+    }
+
+    String render(final OutputFormat format) throws IOException {
+
+        switch (format) {
+        case JSON:
+            return renderJson();
+        case DOTENV:
+            return renderDotenv();
+        default:
+            return renderProperties();
+        }
+    }
+
+    private String renderProperties() throws IOException {
+
+        final Properties properties = new Properties();
+        properties.putAll(prefixedOutputs);
+        final StringWriter writer = new StringWriter();
+        properties.store(writer, "AWS properties");
+        return writer.toString();
+    }
+
+    /**
+     * One object per stack, keyed by stack name, holding its outputs without prefixes. Written by hand rather than with
+     * json-lib, which turns string values that look like JSON into objects.
+     */
+    private String renderJson() {
+
+        final StringBuilder json = new StringBuilder("{");
+        String separator = "\n";
+        for (final Entry<String, Map<String, String>> stack : stackOutputs.entrySet()) {
+            json.append(separator)
+                .append("  ")
+                .append(quoteJson(stack.getKey()))
+                .append(": {");
+            String outputSeparator = "\n";
+            for (final Entry<String, String> output : stack.getValue()
+                                                          .entrySet()) {
+                json.append(outputSeparator)
+                    .append("    ")
+                    .append(quoteJson(output.getKey()))
+                    .append(": ")
+                    .append(quoteJson(output.getValue()));
+                outputSeparator = ",\n";
+            }
+            json.append(stack.getValue()
+                             .isEmpty() ? "}" : "\n  }");
+            separator = ",\n";
+        }
+        return json.append(stackOutputs.isEmpty() ? "}\n" : "\n}\n")
+                   .toString();
+    }
+
+    /**
+     * KEY="value" lines, as read by dotenv libraries and by sh with <code>set -a; . ./aws_stack_output.env</code>.
+     */
+    private String renderDotenv() {
+
+        final StringBuilder env = new StringBuilder();
+        for (final Entry<String, String> output : prefixedOutputs.entrySet()) {
+            env.append(toVariableName(output.getKey()))
+               .append("=\"");
+            final String value = output.getValue() != null ? output.getValue() : "";
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c == '"' || c == '\\' || c == '$' || c == '`') {
+                    env.append('\\');
+                }
+                env.append(c);
+            }
+            env.append("\"\n");
+        }
+        return env.toString();
+    }
+
+    /**
+     * Stack names may contain dashes, which are not allowed in variable names.
+     */
+    static String toVariableName(final String key) {
+
+        final StringBuilder name = new StringBuilder(key.length());
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            name.append(c < 128 && (Character.isLetterOrDigit(c) || c == '_') ? c : '_');
+        }
+        if (name.length() == 0 || Character.isDigit(name.charAt(0))) {
+            name.insert(0, '_');
+        }
+        return name.toString();
+    }
+
+    static String quoteJson(final String value) {
+
+        if (value == null) {
+            return "null";
+        }
+        final StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                quoted.append("\\\"");
+                break;
+            case '\\':
+                quoted.append("\\\\");
+                break;
+            case '\n':
+                quoted.append("\\n");
+                break;
+            case '\r':
+                quoted.append("\\r");
+                break;
+            case '\t':
+                quoted.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    quoted.append(String.format("\\u%04x", (int) c));
+                } else {
+                    quoted.append(c);
+                }
+            }
+        }
+        return quoted.append('"')
+                     .toString();
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.EnvVars;
+import hudson.model.EnvironmentContributingAction;
+import hudson.model.InvisibleAction;
+import hudson.model.AbstractBuild;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The outputs, id and status of the stacks a build created or deployed, recorded once per stack when it is ready, so
+ * that the rest of the build reads them from here instead of from AWS or from the {@link CloudFormation} objects of
+ * another step. The outputs are contributed to the environment of the build, prefixed as by
+ * {@link CloudFormation#getOutputs()}.
+ *
+ * Recording a stack replaces the maps rather than changing them, so readers never need a lock and the variables of the
+ * build are merged once per stack rather than once per read.
+ */
+public final class StackOutputsAction extends InvisibleAction implements EnvironmentContributingAction {
+
+    /**
+     * Never changed once set, by expanded stack name, in the order the stacks were recorded.
+     */
+    private volatile LinkedHashMap<String, StackRecord> stacks = new LinkedHashMap<String, StackRecord>();
+
+    /**
+     * The prefixed outputs of all the stacks, merged.
+     */
+    private transient volatile Map<String, String> variables = Collections.emptyMap();
+
+    /**
+     * Record the outputs of the given stack, once it is created or deployed, adding the action to the build if needed.
+     *
+     * @return what was recorded.
+     */
+    static StackRecord record(final AbstractBuild<?, ?> build, final CloudFormation cloudFormation) {
+
+        final StackRecord record = new StackRecord(cloudFormation);
+        synchronized (StackOutputsAction.class) {
+            StackOutputsAction action = build.getAction(StackOutputsAction.class);
+            if (action == null) {
+                action = new StackOutputsAction();
+                build.addAction(action);
+            }
+            action.add(record);
+        }
+        return record;
+    }
+
+    /**
+     * @return the stack of the given build with the given expanded name, null if the build recorded none.
+     */
+    static StackRecord lookup(final AbstractBuild<?, ?> build, final String stackName) {
+
+        final StackOutputsAction action = build.getAction(StackOutputsAction.class);
+        return action != null ? action.getStack(stackName) : null;
+    }
+
+    synchronized void add(final StackRecord record) {
+
+        final LinkedHashMap<String, StackRecord> added = new LinkedHashMap<String, StackRecord>(stacks);
+        // A stack deployed again moves to the end, so that its outputs win like they did when they were put last.
+        added.remove(record.getStackName());
+        added.put(record.getStackName(), record);
+        variables = merge(added);
+        stacks = added;
+    }
+
+    public Map<String, StackRecord> getStacks() {
+
+        return Collections.<String, StackRecord> unmodifiableMap(stacks);
+    }
+
+    public StackRecord getStack(final String stackName) {
+
+        return stacks.get(stackName);
+    }
+
+    /**
+     * @return the prefixed outputs of all the stacks.
+     */
+    public Map<String, String> getVariables() {
+
+        return variables;
+    }
+
+    public void buildEnvVars(final AbstractBuild<?, ?> build, final EnvVars env) {
+
+        env.putAll(variables);
+    }
+
+    private Object readResolve() {
+
+        variables = merge(stacks);
+        return this;
+    }
+
+    private static Map<String, String> merge(final Map<String, StackRecord> stacks) {
+
+        final Map<String, String> merged = new LinkedHashMap<String, String>();
+        for (final StackRecord record : stacks.values()) {
+            merged.putAll(record.getPrefixedOutputs());
+        }
+        return Collections.unmodifiableMap(merged);
+    }
+
+    /**
+     * A stack as it was once created or deployed.
+     */
+    public static final class StackRecord {
+
+        private final String stackName;
+        private final String stackId;
+        private final String stackStatus;
+        private final LinkedHashMap<String, String> outputs;
+        private final LinkedHashMap<String, String> prefixedOutputs;
+        /**
+         * Whether the stack was reused or leased rather than owned by the build, false in records saved before.
+         */
+        private final boolean shared;
+
+        StackRecord(final CloudFormation cloudFormation) {
+
+            this(cloudFormation.getExpandedStackName(), cloudFormation.getStackId(), cloudFormation.getStackStatus(),
+                 cloudFormation.getStackOutputs(), cloudFormation.getOutputs(), cloudFormation.isShared());
+        }
+
+        StackRecord(final String stackName, final String stackId, final String stackStatus, final Map<String, String> outputs,
+                final Map<String, String> prefixedOutputs, final boolean shared) {
+
+            this.stackName = stackName;
+            this.stackId = stackId;
+            this.stackStatus = stackStatus;
+            this.outputs = new LinkedHashMap<String, String>(outputs);
+            this.prefixedOutputs = new LinkedHashMap<String, String>(prefixedOutputs);
+            this.shared = shared;
+        }
+
+        public String getStackName() {
+
+            return stackName;
+        }
+
+        public String getStackId() {
+
+            return stackId;
+        }
+
+        /**
+         * @return the status of the stack once ready, e.g. CREATE_COMPLETE, null if it was not described, e.g. because
+         *         it was reused.
+         */
+        public String getStackStatus() {
+
+            return stackStatus;
+        }
+
+        /**
+         * @return the outputs of the stack, without prefixes.
+         */
+        public Map<String, String> getOutputs() {
+
+            return Collections.unmodifiableMap(outputs);
+        }
+
+        /**
+         * @return the outputs of the stack, prefixed by its name and output prefix.
+         */
+        public Map<String, String> getPrefixedOutputs() {
+
+            return Collections.unmodifiableMap(prefixedOutputs);
+        }
+
+        /**
+         * @return true if the build reused the stack from the {@link StackReuseCache} or leased it from a
+         *         {@link WarmStackPool}, which own it, false if the build owns it.
+         */
+        public boolean isShared() {
+
+            return shared;
+        }
+    }
+
+}
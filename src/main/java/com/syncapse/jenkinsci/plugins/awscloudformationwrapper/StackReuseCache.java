@@ -0,0 +1,407 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.PeriodicWork;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.util.Secret;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+
+import com.amazonaws.services.cloudformation.model.DeleteStackRequest;
+
+/**
+ * Stacks shared by all the builds that create the same stack, by {@link CloudFormation#getFingerprint() fingerprint}
+ * of template, parameters, region and account.
+ *
+ * The cache owns the stacks it holds: they are deleted once unused for longer than the time to live, or when the cache
+ * is full and they are the least recently used. A stack is never deleted while a running build uses it, the cache
+ * growing past its size instead. The cache survives restarts in an XML file of the Jenkins home, the secret keys needed
+ * to delete the stacks being encrypted.
+ */
+class StackReuseCache {
+
+    private static final Logger LOGGER = Logger.getLogger(StackReuseCache.class.getName());
+
+    /**
+     * Hours after which an unused stack is deleted.
+     */
+    private static final long TTL = TimeUnit.HOURS.toMillis(Long.getLong(StackReuseCache.class.getName() + ".ttl", 24));
+
+    /**
+     * Maximum number of stacks kept.
+     */
+    private static final int MAX_ENTRIES = Integer.getInteger(StackReuseCache.class.getName() + ".maxEntries", 50);
+
+    /**
+     * Makes the calls deleting the evicted stacks, one at a time.
+     */
+    private static final ExecutorService DELETER = Executors.newSingleThreadExecutor(new StackWaitScheduler.DaemonThreadFactory("CloudFormation reusable stack deleter"));
+
+    private static StackReuseCache instance;
+
+    private final XmlFile file;
+    private final long ttl;
+    private final int maxEntries;
+
+    /**
+     * Least recently used first.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * @param file where the entries are saved, null to keep them in memory only.
+     */
+    StackReuseCache(final XmlFile file, final long ttl, final int maxEntries) {
+
+        this.file = file;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the cache of this Jenkins, kept in memory only when there is no Jenkins, e.g. in tests.
+     */
+    static synchronized StackReuseCache get() {
+
+        if (instance == null) {
+            final Jenkins jenkins = Jenkins.getInstance();
+            if (jenkins == null) {
+                instance = new StackReuseCache(null, TTL, MAX_ENTRIES);
+                return instance;
+            }
+            final XmlFile file = new XmlFile(Jenkins.XSTREAM, new File(jenkins.getRootDir(), StackReuseCache.class.getName() + ".xml"));
+            instance = new StackReuseCache(file, TTL, MAX_ENTRIES);
+            instance.load();
+        }
+        return instance;
+    }
+
+    /**
+     * @param user the build reusing the stack, which uses it until {@link #release(String) released}.
+     * @return the stack created with the given fingerprint, null if there is none or it expired.
+     */
+    synchronized Entry lookup(final String fingerprint, final String user) {
+
+        final Entry entry = entries.get(fingerprint);
+        if (entry == null || isExpired(entry, System.currentTimeMillis())) {
+            return null;
+        }
+        entry.lastUsed = System.currentTimeMillis();
+        entry.getUsers()
+             .add(user);
+        save();
+        return entry;
+    }
+
+    /**
+     * Hand the given stack over to the cache, unless it already holds a stack with the same fingerprint.
+     *
+     * @param user the build that created the stack, which uses it until {@link #release(String) released}.
+     * @return true if the cache took the stack, in which case it deletes it once evicted. False if the caller still
+     *         owns it.
+     */
+    boolean put(final String fingerprint, final Entry entry, final String user) {
+
+        final List<Entry> evicted = new ArrayList<Entry>();
+        synchronized (this) {
+            final Entry existing = entries.get(fingerprint);
+            if (existing != null && (existing.isUsed() || !isExpired(existing, System.currentTimeMillis()))) {
+                return false;
+            }
+            if (existing != null) {
+                evicted.add(entries.remove(fingerprint));
+            }
+            entry.getUsers()
+                 .add(user);
+            entries.put(fingerprint, entry);
+            for (final Iterator<Entry> it = entries.values()
+                                                   .iterator(); entries.size() > maxEntries && it.hasNext();) {
+                final Entry eldest = it.next();
+                if (!eldest.isUsed()) {
+                    evicted.add(eldest);
+                    it.remove();
+                }
+            }
+            save();
+        }
+        delete(evicted);
+        return true;
+    }
+
+    /**
+     * Stop counting the given build as a user of its stacks, e.g. once it completed. The time to live of the stacks
+     * starts again from now.
+     */
+    void release(final String user) {
+
+        final List<Entry> evicted = new ArrayList<Entry>();
+        synchronized (this) {
+            boolean released = false;
+            for (final Entry entry : entries.values()) {
+                if (entry.getUsers()
+                         .remove(user)) {
+                    entry.lastUsed = System.currentTimeMillis();
+                    released = true;
+                }
+            }
+            if (!released) {
+                return;
+            }
+            // Stacks kept past the size of the cache because they were used can go now.
+            for (final Iterator<Entry> it = entries.values()
+                                                   .iterator(); entries.size() > maxEntries && it.hasNext();) {
+                final Entry eldest = it.next();
+                if (!eldest.isUsed()) {
+                    evicted.add(eldest);
+                    it.remove();
+                }
+            }
+            save();
+        }
+        delete(evicted);
+    }
+
+    /**
+     * Forget the given stack, deleted by other means than the cache, so that no build reuses it.
+     */
+    synchronized void invalidate(final String stackId) {
+
+        if (stackId == null) {
+            return;
+        }
+        for (final Iterator<Entry> it = entries.values()
+                                               .iterator(); it.hasNext();) {
+            if (it.next().stackId.equals(stackId)) {
+                it.remove();
+                save();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if the given stack is one of the cache, which only the cache may delete.
+     */
+    synchronized boolean holds(final String stackName, final String awsAccessKey, final Region awsRegion) {
+
+        for (final Entry entry : entries.values()) {
+            if (entry.stackName.equals(stackName) && equal(entry.awsAccessKey, awsAccessKey) && regionOf(entry.awsRegion) == regionOf(awsRegion)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equal(final Object a, final Object b) {
+
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static Region regionOf(final Region region) {
+
+        return region != null ? region : Region.getDefault();
+    }
+
+    /**
+     * Remove the stacks unused for longer than the time to live.
+     *
+     * @return the removed entries, whose stacks still have to be deleted.
+     */
+    synchronized List<Entry> evictExpired() {
+
+        final long now = System.currentTimeMillis();
+        final List<Entry> evicted = new ArrayList<Entry>();
+        for (final Iterator<Entry> it = entries.values()
+                                               .iterator(); it.hasNext();) {
+            final Entry entry = it.next();
+            if (isExpired(entry, now) && !entry.isUsed()) {
+                evicted.add(entry);
+                it.remove();
+            }
+        }
+        if (!evicted.isEmpty()) {
+            save();
+        }
+        return evicted;
+    }
+
+    synchronized int size() {
+
+        return entries.size();
+    }
+
+    private boolean isExpired(final Entry entry, final long now) {
+
+        return now - entry.lastUsed > ttl;
+    }
+
+    /**
+     * Ask for the deletion of the given stacks, without waiting for it. The calls are made by the {@link #DELETER}, as
+     * stacks are evicted e.g. by the stack pollers, which must not wait on the API rate limit.
+     */
+    void delete(final List<Entry> evicted) {
+
+        if (evicted.isEmpty()) {
+            return;
+        }
+        DELETER.execute(new Runnable() {
+
+            public void run() {
+
+                for (final Entry entry : evicted) {
+                    deleteStack(entry);
+                }
+            }
+        });
+    }
+
+    private static void deleteStack(final Entry entry) {
+
+        LOGGER.info("Deleting reusable stack " + entry.stackName);
+        try {
+            CloudFormationClients.get()
+                                 .getClient(entry.awsAccessKey, Secret.toString(entry.awsSecretKey), entry.awsRegion)
+                                 .deleteStack(new DeleteStackRequest().withStackName(entry.stackId));
+            StackSummaryIndex.invalidate(entry.awsAccessKey, entry.awsRegion);
+        } catch (final RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete reusable stack " + entry.stackName, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load() {
+
+        if (file == null || !file.exists()) {
+            return;
+        }
+        try {
+            entries.putAll((Map<String, Entry>) file.read());
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load the reusable stacks from " + file, e);
+        }
+    }
+
+    private void save() {
+
+        if (file == null) {
+            return;
+        }
+        try {
+            file.write(new LinkedHashMap<String, Entry>(entries));
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save the reusable stacks to " + file, e);
+        }
+    }
+
+    /**
+     * A stack held by the cache, with what is needed to reuse it without calling AWS, and to delete it.
+     */
+    static final class Entry {
+
+        private final String stackName;
+        private final String stackId;
+        private final HashMap<String, String> stackOutputs;
+        private final String awsAccessKey;
+        private final Secret awsSecretKey;
+        private final Region awsRegion;
+        private long lastUsed = System.currentTimeMillis();
+        /**
+         * The running builds using the stack, none after a restart.
+         */
+        private transient Set<String> users;
+
+        Entry(final String stackName, final String stackId, final Map<String, String> stackOutputs, final String awsAccessKey, final Secret awsSecretKey,
+                final Region awsRegion) {
+
+            this.stackName = stackName;
+            this.stackId = stackId;
+            this.stackOutputs = new HashMap<String, String>(stackOutputs);
+            this.awsAccessKey = awsAccessKey;
+            this.awsSecretKey = awsSecretKey;
+            this.awsRegion = awsRegion;
+        }
+
+        String getStackName() {
+
+            return stackName;
+        }
+
+        String getStackId() {
+
+            return stackId;
+        }
+
+        Map<String, String> getStackOutputs() {
+
+            return stackOutputs;
+        }
+
+        boolean isUsed() {
+
+            return users != null && !users.isEmpty();
+        }
+
+        private Set<String> getUsers() {
+
+            if (users == null) {
+                users = new HashSet<String>();
+            }
+            return users;
+        }
+    }
+
+    @Extension
+    public static final class ExpiredStackReaper extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+
+            return TimeUnit.MINUTES.toMillis(10);
+        }
+
+        @Override
+        protected void doRun() {
+
+            final StackReuseCache cache = get();
+            cache.delete(cache.evictExpired());
+        }
+    }
+
+    /**
+     * Releases the stacks of every build once it completed, whichever step reused them.
+     */
+    @Extension
+    public static final class BuildReleaser extends RunListener<Run<?, ?>> {
+
+        @Override
+        public void onCompleted(final Run<?, ?> run, final TaskListener listener) {
+
+            synchronized (StackReuseCache.class) {
+                if (instance == null) {
+                    return; // No build used the cache since Jenkins started.
+                }
+            }
+            get().release(run.getExternalizableId());
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.ListStacksRequest;
+import com.amazonaws.services.cloudformation.model.ListStacksResult;
+import com.amazonaws.services.cloudformation.model.StackSummary;
+
+/**
+ * The running stacks of an account in a region, sorted by name for prefix lookups.
+ *
+ * Indexes are built from a fully paginated ListStacks and shared by all the builds using the same account and region
+ * for {@link #TTL} milliseconds, after which the next lookup lists the stacks again.
+ */
+final class StackSummaryIndex {
+
+    /**
+     * Milliseconds an index is reused for.
+     */
+    static final long TTL = TimeUnit.SECONDS.toMillis(Long.getLong(StackSummaryIndex.class.getName() + ".ttl", 30));
+
+    private static final List<String> RUNNING_STATUSES = Arrays.asList("UPDATE_COMPLETE", "CREATE_COMPLETE", "ROLLBACK_COMPLETE");
+
+    private static final ConcurrentMap<String, Holder> INDEXES = new ConcurrentHashMap<String, Holder>();
+
+    private static final Comparator<StackSummary> BY_CREATION_TIME = new Comparator<StackSummary>() {
+
+        public int compare(final StackSummary a, final StackSummary b) {
+
+            return a.getCreationTime()
+                    .compareTo(b.getCreationTime());
+        }
+    };
+
+    private final NavigableMap<String, StackSummary> stacksByName;
+    private final long loadedAt;
+
+    private StackSummaryIndex(final NavigableMap<String, StackSummary> stacksByName) {
+
+        this.stacksByName = stacksByName;
+        this.loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the index of the given account and region, listing the stacks with the given client if there is no
+     *         fresh index.
+     */
+    static StackSummaryIndex get(final AmazonCloudFormation client, final String awsAccessKey, final Region region) {
+
+        final String key = key(awsAccessKey, region);
+        Holder holder = INDEXES.get(key);
+        if (holder == null) {
+            final Holder created = new Holder();
+            holder = INDEXES.putIfAbsent(key, created);
+            if (holder == null) {
+                holder = created;
+            }
+        }
+        return holder.get(client);
+    }
+
+    /**
+     * Forget the index of the given account and region, e.g. because one of its stacks is being deleted.
+     */
+    static void invalidate(final String awsAccessKey, final Region region) {
+
+        final Holder holder = INDEXES.get(key(awsAccessKey, region));
+        if (holder != null) {
+            holder.invalidate();
+        }
+    }
+
+    /**
+     * List all the running stacks, following pagination.
+     */
+    static StackSummaryIndex load(final AmazonCloudFormation client) {
+
+        final NavigableMap<String, StackSummary> stacksByName = new TreeMap<String, StackSummary>();
+        String nextToken = null;
+        do {
+            final ListStacksRequest request = new ListStacksRequest().withNextToken(nextToken);
+            request.setStackStatusFilters(RUNNING_STATUSES);
+            final ListStacksResult result = client.listStacks(request);
+            if (result.getStackSummaries() != null) {
+                for (final StackSummary summary : result.getStackSummaries()) {
+                    stacksByName.put(summary.getStackName(), summary);
+                }
+            }
+            nextToken = result.getNextToken();
+        } while (nextToken != null);
+
+        return new StackSummaryIndex(stacksByName);
+    }
+
+    /**
+     * @return the stacks whose name starts with the given prefix, oldest first.
+     */
+    List<StackSummary> getStacksWithPrefix(final String prefix) {
+
+        final List<StackSummary> stacks = new ArrayList<StackSummary>(stacksByName.subMap(prefix, true, prefix + Character.MAX_VALUE, false)
+                                                                                  .values());
+        Collections.sort(stacks, BY_CREATION_TIME);
+        return stacks;
+    }
+
+    private boolean isFresh() {
+
+        return System.currentTimeMillis() - loadedAt < TTL;
+    }
+
+    private static String key(final String awsAccessKey, final Region region) {
+
+        return awsAccessKey + "@" + (region != null ? region : Region.getDefault()).shortName;
+    }
+
+    /**
+     * Loads the index of one account and region at most once at a time.
+     */
+    private static final class Holder {
+
+        private volatile StackSummaryIndex index;
+
+        StackSummaryIndex get(final AmazonCloudFormation client) {
+
+            final StackSummaryIndex current = index;
+            if (current != null && current.isFresh()) {
+                return current;
+            }
+            synchronized (this) {
+                if (index == null || !index.isFresh()) {
+                    index = load(client);
+                }
+                return index;
+            }
+        }
+
+        void invalidate() {
+
+            index = null;
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+
+/**
+ * Where the time of one operation on a stack went: the call asking for it, the wait for the stack to reach a terminal
+ * status, and the sleep after it. Kept with the build by {@link StackTimingAction}.
+ */
+public final class StackTiming {
+
+    private final String stackName;
+    private final String operation;
+    private final long startedAt;
+    private long requestMillis;
+    private long terminalMillis;
+    private int polls;
+    private int apiCalls;
+    private long sleptMillis;
+    private boolean successful;
+    /**
+     * How long the resources of the stack took, null if none completed.
+     */
+    private ResourceTimingReport resources;
+
+    StackTiming(final String stackName, final String operation) {
+
+        this.stackName = stackName;
+        this.operation = operation;
+        this.startedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @return a client counting the calls made with the given one in this timing.
+     */
+    AmazonCloudFormation meter(final AmazonCloudFormation client) {
+
+        return (AmazonCloudFormation) Proxy.newProxyInstance(AmazonCloudFormation.class.getClassLoader(), new Class<?>[] { AmazonCloudFormation.class },
+                                                             new Meter(client));
+    }
+
+    synchronized void requested(final long millis) {
+
+        requestMillis += millis;
+    }
+
+    synchronized void polled() {
+
+        polls++;
+    }
+
+    synchronized void slept(final long millis) {
+
+        sleptMillis += millis;
+    }
+
+    /**
+     * Record that the stack reached a terminal status, or that the operation was given up.
+     */
+    synchronized void finished(final boolean successful) {
+
+        this.terminalMillis = System.currentTimeMillis() - startedAt - sleptMillis;
+        this.successful = successful;
+    }
+
+    synchronized void setResources(final ResourceTimingReport resources) {
+
+        this.resources = resources;
+    }
+
+    private synchronized void called() {
+
+        apiCalls++;
+    }
+
+    public String getStackName() {
+
+        return stackName;
+    }
+
+    public String getOperation() {
+
+        return operation;
+    }
+
+    public long getStartedAt() {
+
+        return startedAt;
+    }
+
+    /**
+     * @return the time the CreateStack, UpdateStack or DeleteStack call took.
+     */
+    public synchronized long getRequestMillis() {
+
+        return requestMillis;
+    }
+
+    /**
+     * @return the time from the start of the operation until the stack reached a terminal status.
+     */
+    public synchronized long getTerminalMillis() {
+
+        return terminalMillis;
+    }
+
+    public synchronized int getPolls() {
+
+        return polls;
+    }
+
+    public synchronized int getApiCalls() {
+
+        return apiCalls;
+    }
+
+    public synchronized long getSleptMillis() {
+
+        return sleptMillis;
+    }
+
+    /**
+     * @return the whole time the operation took the build.
+     */
+    public synchronized long getTotalMillis() {
+
+        return terminalMillis + sleptMillis;
+    }
+
+    public synchronized boolean isSuccessful() {
+
+        return successful;
+    }
+
+    public synchronized ResourceTimingReport getResources() {
+
+        return resources;
+    }
+
+    private final class Meter implements InvocationHandler {
+
+        private final AmazonCloudFormation client;
+
+        Meter(final AmazonCloudFormation client) {
+
+            this.client = client;
+        }
+
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+
+            if (!ApiRateLimiter.isApiCall(method)) {
+                return invokeClient(method, args);
+            }
+            try {
+                return invokeClient(method, args);
+            } finally {
+                called();
+            }
+        }
+
+        private Object invokeClient(final Method method, final Object[] args) throws Throwable {
+
+            try {
+                return method.invoke(client, args);
+            } catch (final InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+}
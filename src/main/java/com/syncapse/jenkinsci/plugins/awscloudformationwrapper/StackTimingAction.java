@@ -0,0 +1,113 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@link StackTiming}s of the stacks a build created, updated or deleted, saved with the build and shown as a table
+ * on its page.
+ */
+public class StackTimingAction implements RunAction2 {
+
+    private final List<StackTiming> timings = new ArrayList<StackTiming>();
+
+    private transient Run<?, ?> owner;
+
+    /**
+     * Add the operations done on the given stack since the last call to the action of the build, adding the action to
+     * the build if needed.
+     */
+    static void record(final AbstractBuild<?, ?> build, final CloudFormation cloudFormation) {
+
+        final List<StackTiming> taken = cloudFormation.takeTimings();
+        if (taken == null || taken.isEmpty()) {
+            return;
+        }
+        synchronized (StackTimingAction.class) {
+            StackTimingAction action = build.getAction(StackTimingAction.class);
+            if (action == null) {
+                action = new StackTimingAction();
+                build.addAction(action);
+            }
+            action.addAll(taken);
+        }
+    }
+
+    private synchronized void addAll(final List<StackTiming> taken) {
+
+        timings.addAll(taken);
+    }
+
+    public synchronized List<StackTiming> getTimings() {
+
+        return Collections.unmodifiableList(new ArrayList<StackTiming>(timings));
+    }
+
+    /**
+     * @return the time of all the operations together, as if they had been done one after another.
+     */
+    public synchronized long getTotalMillis() {
+
+        long total = 0;
+        for (final StackTiming timing : timings) {
+            total += timing.getTotalMillis();
+        }
+        return total;
+    }
+
+    /**
+     * @return the operation that took the longest, null if there is none.
+     */
+    public synchronized StackTiming getSlowest() {
+
+        StackTiming slowest = null;
+        for (final StackTiming timing : timings) {
+            if (slowest == null || timing.getTotalMillis() > slowest.getTotalMillis()) {
+                slowest = timing;
+            }
+        }
+        return slowest;
+    }
+
+    public Run<?, ?> getOwner() {
+
+        return owner;
+    }
+
+    public void onAttached(final Run<?, ?> run) {
+
+        this.owner = run;
+    }
+
+    public void onLoad(final Run<?, ?> run) {
+
+        this.owner = run;
+    }
+
+    public static String formatMillis(final long millis) {
+
+        return Util.getTimeSpanString(millis);
+    }
+
+    public String getIconFileName() {
+
+        return "clock.png";
+    }
+
+    public String getDisplayName() {
+
+        return "CloudFormation Stack Timings";
+    }
+
+    public String getUrlName() {
+
+        return "stackTimings";
+    }
+
+}
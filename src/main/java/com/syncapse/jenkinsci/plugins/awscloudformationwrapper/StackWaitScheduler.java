@@ -0,0 +1,245 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.init.Terminator;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Plugin wide scheduler that polls every in-flight stack operation.
+ *
+ * Instead of each build sleeping between two status checks of its stack, builds submit a {@link Poll} and wait on the
+ * returned future. A small, fixed pool of threads runs the status checks of all the stacks, so the number of threads
+ * does not grow with the number of stacks being created or deleted concurrently. Polls never block these threads: a
+ * poll that has to wait, e.g. because it is throttled, throws {@link PollLater} to be run again later.
+ */
+public final class StackWaitScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(StackWaitScheduler.class.getName());
+
+    /**
+     * Number of threads checking stack statuses. Status checks are short, so a couple of threads serve hundreds of
+     * stacks.
+     */
+    private static final int THREADS = Integer.getInteger(StackWaitScheduler.class.getName() + ".threads", 2);
+
+    /**
+     * Set on the threads of the scheduler while they run a poll.
+     */
+    private static final ThreadLocal<Boolean> POLLING = new ThreadLocal<Boolean>();
+
+    private static StackWaitScheduler instance;
+
+    private final ScheduledExecutorService executor;
+
+    private StackWaitScheduler(final int threads) {
+
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, new DaemonThreadFactory("CloudFormation stack poller"));
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.executor = executor;
+    }
+
+    public static synchronized StackWaitScheduler get() {
+
+        if (instance == null) {
+            instance = new StackWaitScheduler(THREADS);
+        }
+        return instance;
+    }
+
+    @Terminator
+    public static synchronized void shutdown() {
+
+        if (instance != null) {
+            instance.executor.shutdownNow();
+            instance = null;
+        }
+    }
+
+    /**
+     * Start polling right away.
+     *
+     * @return a future completed with the first non null value returned by the poll, or with the exception it threw.
+     *         Cancelling the future stops the polling, and waits for the poll in progress (if any) so that the stack
+     *         can be polled for another operation right after. The future is completed on a thread of the scheduler, so
+     *         its listeners must not wait.
+     */
+    public <T> ListenableFuture<T> submit(final Poll<T> poll) {
+
+        final PollTask<T> task = new PollTask<T>(poll);
+        task.schedule(0);
+        return task;
+    }
+
+    /**
+     * Wait for a future returned by {@link #submit(Poll)}, unwrapping the exception the poll failed with (if any).
+     */
+    public static <T> T await(final Future<T> future) throws InterruptedException {
+
+        try {
+            return future.get();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * @return true if the current thread is running a {@link Poll}, which must throw {@link PollLater} rather than
+     *         wait.
+     */
+    static boolean isPolling() {
+
+        return Boolean.TRUE.equals(POLLING.get());
+    }
+
+    /**
+     * A status check of a single stack operation.
+     */
+    public interface Poll<T> {
+
+        /**
+         * @return the outcome of the operation once it is over, or null if it should be polled again.
+         */
+        T poll() throws Exception;
+
+        /**
+         * Called after {@link #poll()} returned null.
+         *
+         * @return the number of milliseconds to wait before polling again.
+         */
+        long nextDelay();
+    }
+
+    /**
+     * Runs a {@link Poll} until it returns a value, and is the future of that value.
+     */
+    private final class PollTask<T> extends AbstractFuture<T> implements Runnable {
+
+        private final Poll<T> poll;
+        /**
+         * Held while polling, including while the listeners of the future run.
+         */
+        private final Lock polling = new ReentrantLock();
+
+        PollTask(final Poll<T> poll) {
+
+            this.poll = poll;
+        }
+
+        void schedule(final long delay) {
+
+            try {
+                executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (final RejectedExecutionException e) {
+                setException(e);
+            }
+        }
+
+        public void run() {
+
+            polling.lock();
+            POLLING.set(Boolean.TRUE);
+            try {
+                if (isDone()) {
+                    return; // cancelled by the waiting build.
+                }
+                final T result = poll.poll();
+                if (result != null) {
+                    set(result);
+                } else {
+                    schedule(poll.nextDelay());
+                }
+            } catch (final PollLater e) {
+                schedule(e.getDelay());
+            } catch (final Throwable t) {
+                LOGGER.log(Level.FINE, "Stack poll failed", t);
+                setException(t);
+            } finally {
+                POLLING.remove();
+                polling.unlock();
+            }
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+            // A poll in progress checked the future before it was cancelled: let it end, e.g. before the stack is deleted.
+            polling.lock();
+            polling.unlock();
+            return cancelled;
+        }
+    }
+
+    /**
+     * Thrown while {@link #isPolling() polling} instead of waiting, to run the poll again after the given delay.
+     */
+    static final class PollLater extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long delay;
+
+        /**
+         * @param delay in milliseconds.
+         */
+        PollLater(final long delay) {
+
+            super("Poll again in " + delay + "ms");
+            this.delay = delay;
+        }
+
+        long getDelay() {
+
+            return delay;
+        }
+
+        /**
+         * Thrown in the normal course of polling, so its stack trace is never needed.
+         */
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+
+            return this;
+        }
+    }
+
+    static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(final String name) {
+
+            this.name = name;
+        }
+
+        public Thread newThread(final Runnable r) {
+
+            final Thread thread = new Thread(r, name + " #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
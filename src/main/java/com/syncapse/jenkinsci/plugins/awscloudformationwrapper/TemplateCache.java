@@ -0,0 +1,181 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Content addressed cache of the CloudFormation templates read from build workspaces, shared by all the build steps of
+ * the plugin.
+ *
+ * Templates are hashed where they live, usually on an agent, and only transferred to the master when the cache does not
+ * already hold a template with the same hash. Identical templates are therefore transferred once and kept in memory
+ * once. The cache is bounded by the total size of the templates it holds and evicts the least recently used ones.
+ *
+ * Templates are read as UTF-8, the encoding CloudFormation expects.
+ */
+public final class TemplateCache {
+
+    private static final String ENCODING = "UTF-8";
+
+    /**
+     * Maximum number of characters held by the cache.
+     */
+    private static final long MAX_SIZE = Long.getLong(TemplateCache.class.getName() + ".maxSize", 16 * 1024 * 1024);
+
+    private static final TemplateCache INSTANCE = new TemplateCache(MAX_SIZE);
+
+    private final long maxSize;
+    private final LinkedHashMap<String, String> templates = new LinkedHashMap<String, String>(16, 0.75f, true);
+    private long size;
+
+    TemplateCache(final long maxSize) {
+
+        this.maxSize = maxSize;
+    }
+
+    public static TemplateCache get() {
+
+        return INSTANCE;
+    }
+
+    /**
+     * @param file the template file, in a build workspace.
+     * @return the template, transferred from the file's machine only if it was not cached.
+     */
+    public Template load(final FilePath file) throws IOException, InterruptedException {
+
+        final String hash = file.act(new DigestTemplate());
+        final String cached = lookup(hash);
+        if (cached != null) {
+            return new Template(hash, cached);
+        }
+
+        // Hash again what was actually read, in case the file changed in between.
+        final String body = file.act(new ReadTemplate());
+        final Template template = new Template(digest(body), body);
+        put(template);
+        return template;
+    }
+
+    /**
+     * @return the hash identifying a template body. The same body always gets the same hash, wherever it is computed.
+     */
+    public static String digest(final String body) {
+
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Util.toHexString(digest.digest(body.getBytes(ENCODING)));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        } catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // every JVM has UTF-8
+        }
+    }
+
+    synchronized String lookup(final String hash) {
+
+        return templates.get(hash);
+    }
+
+    synchronized void put(final Template template) {
+
+        if (templates.put(template.getHash(), template.getBody()) == null) {
+            size += template.getBody()
+                            .length();
+        }
+        for (final Iterator<Map.Entry<String, String>> it = templates.entrySet()
+                                                                     .iterator(); size > maxSize && it.hasNext();) {
+            final Map.Entry<String, String> eldest = it.next();
+            if (eldest.getKey()
+                      .equals(template.getHash())) {
+                continue; // always keep the template just loaded.
+            }
+            size -= eldest.getValue()
+                          .length();
+            it.remove();
+        }
+    }
+
+    private static String read(final File file) throws IOException {
+
+        final InputStream in = new FileInputStream(file);
+        try {
+            final Reader reader = new InputStreamReader(in, ENCODING);
+            final StringBuilder body = new StringBuilder((int) file.length());
+            final char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                body.append(buffer, 0, read);
+            }
+            return body.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * A template body and its hash.
+     */
+    public static final class Template {
+
+        private final String hash;
+        private final String body;
+
+        Template(final String hash, final String body) {
+
+            this.hash = hash;
+            this.body = body;
+        }
+
+        public String getHash() {
+
+            return hash;
+        }
+
+        public String getBody() {
+
+            return body;
+        }
+    }
+
+    /**
+     * Computes the hash of a template file on the machine holding it.
+     */
+    private static final class DigestTemplate implements FilePath.FileCallable<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        public String invoke(final File file, final VirtualChannel channel) throws IOException, InterruptedException {
+
+            return digest(read(file));
+        }
+    }
+
+    /**
+     * Reads a template file on the machine holding it.
+     */
+    private static final class ReadTemplate implements FilePath.FileCallable<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        public String invoke(final File file, final VirtualChannel channel) throws IOException, InterruptedException {
+
+            return read(file);
+        }
+    }
+
+}
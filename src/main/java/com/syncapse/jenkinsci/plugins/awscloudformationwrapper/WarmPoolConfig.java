@@ -0,0 +1,72 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * How many stacks of a {@link StackBean} to keep created ahead of the builds that need them, see {@link WarmStackPool}.
+ */
+public class WarmPoolConfig extends AbstractDescribableImpl<WarmPoolConfig> {
+
+    public static final int DEFAULT_SIZE = 1;
+    public static final long DEFAULT_MAX_IDLE = 60;
+
+    /**
+     * Number of ready stacks to keep in the pool.
+     */
+    private final int size;
+
+    /**
+     * Minutes a ready stack may wait for a build before it is deleted.
+     */
+    private final long maxIdle;
+
+    /**
+     * Whether the stack leased by a successful build goes back to the pool instead of being deleted.
+     */
+    private final boolean reuse;
+
+    @DataBoundConstructor
+    public WarmPoolConfig(final int size, final long maxIdle, final boolean reuse) {
+
+        this.size = size > 0 ? size : DEFAULT_SIZE;
+        this.maxIdle = maxIdle > 0 ? maxIdle : DEFAULT_MAX_IDLE;
+        this.reuse = reuse;
+    }
+
+    public int getSize() {
+
+        return size;
+    }
+
+    public long getMaxIdle() {
+
+        return maxIdle;
+    }
+
+    public boolean isReuse() {
+
+        return reuse;
+    }
+
+    long getMaxIdleMillis() {
+
+        return TimeUnit.MINUTES.toMillis(maxIdle);
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends Descriptor<WarmPoolConfig> {
+
+        @Override
+        public String getDisplayName() {
+
+            return "Warm stack pool";
+        }
+    }
+
+}
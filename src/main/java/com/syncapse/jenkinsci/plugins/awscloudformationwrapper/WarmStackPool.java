@@ -0,0 +1,463 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import hudson.Extension;
+import hudson.init.Terminator;
+import hudson.model.PeriodicWork;
+import hudson.util.LogTaskListener;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Stacks created ahead of the builds that need them, so that a build leases a ready stack instead of waiting for one to
+ * be created.
+ *
+ * Stacks are pooled by the {@link CloudFormation#getFingerprint() fingerprint} of their template, parameters, region
+ * and account. A pool is filled as soon as it is {@link #prepare(CloudFormation, WarmPoolConfig) prepared}, e.g. when
+ * its job is saved, and every lease starts the creation of a replacement in the background. Pools are only kept full
+ * while builds use them: ready stacks that wait longer than the configured maximum idle time are deleted and not
+ * replaced.
+ *
+ * Pooled stacks are recorded in the {@link StackLedger}, so that the ones left by a restart are deleted.
+ */
+public final class WarmStackPool {
+
+    private static final Logger LOGGER = Logger.getLogger(WarmStackPool.class.getName());
+
+    /**
+     * The build id of the pooled stacks in the {@link StackLedger}.
+     */
+    static final String LEDGER_ID = "warm stack pool";
+
+    private static final WarmStackPool INSTANCE = new WarmStackPool(Executors.newSingleThreadExecutor(new StackWaitScheduler.DaemonThreadFactory(
+            "CloudFormation warm stack pool")));
+
+    private final ExecutorService executor;
+
+    private final Map<String, Pool> pools = new HashMap<String, Pool>();
+
+    /**
+     * The names of the stacks leased to running builds.
+     */
+    private final Set<String> leasedStacks = new HashSet<String>();
+
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * @param executor asks for the creation and deletion of pooled stacks, which the {@link StackWaitScheduler} then
+     *        polls. Asking may wait for throttled requests, so this must not be one of its threads.
+     */
+    WarmStackPool(final ExecutorService executor) {
+
+        this.executor = executor;
+    }
+
+    static WarmStackPool get() {
+
+        return INSTANCE;
+    }
+
+    /**
+     * Start filling the pool of stacks created the same way as the given one, ahead of the builds that need them.
+     *
+     * @param prototype a stack a build would create.
+     */
+    synchronized void prepare(final CloudFormation prototype, final WarmPoolConfig config) {
+
+        replenish(getPool(prototype, config));
+    }
+
+    /**
+     * Take a ready stack created the same way as the given one, and start creating its replacement.
+     *
+     * @param prototype the stack the build would otherwise create.
+     * @return the leased stack, or null if none is ready yet.
+     */
+    synchronized Lease lease(final CloudFormation prototype, final WarmPoolConfig config) {
+
+        final Pool pool = getPool(prototype, config);
+        final WarmStack leased = pool.ready.poll();
+        replenish(pool);
+        if (leased == null) {
+            return null;
+        }
+        leasedStacks.add(leased.stackName);
+        // From now on, the build records the stack.
+        StackLedger.get()
+                   .remove(LEDGER_ID, leased.stackName);
+        return new Lease(pool.fingerprint, config, leased);
+    }
+
+    /**
+     * Forget a leased stack the build keeps or deletes instead of {@link #giveBack(Lease, Map) giving it back}.
+     */
+    synchronized void release(final Lease lease) {
+
+        leasedStacks.remove(lease.getStackName());
+    }
+
+    /**
+     * @return true if the given stack is one of the pool, being created, ready or leased, which only the pool or the
+     *         build leasing it may delete.
+     */
+    synchronized boolean holds(final String stackName) {
+
+        if (leasedStacks.contains(stackName)) {
+            return true;
+        }
+        for (final Pool pool : pools.values()) {
+            if (pool.creating.contains(stackName)) {
+                return true;
+            }
+            for (final WarmStack stack : pool.ready) {
+                if (stack.stackName.equals(stackName)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Pool getPool(final CloudFormation prototype, final WarmPoolConfig config) {
+
+        final String fingerprint = prototype.getFingerprint();
+        Pool pool = pools.get(fingerprint);
+        if (pool == null) {
+            pool = new Pool(fingerprint);
+            pools.put(fingerprint, pool);
+        }
+        // A copy, so that the pool does not hold on to the logger and environment of a build.
+        pool.definition = prototype.copy(prototype.getExpandedStackName(), newLogger());
+        pool.config = config;
+        pool.lastUsed = System.currentTimeMillis();
+        return pool;
+    }
+
+    /**
+     * Put a leased stack back into the pool, if the pool is not full already.
+     *
+     * @param stackOutputs the outputs of the stack, which may have changed while it was leased.
+     * @return true if the pool took the stack back, false if the caller should delete it.
+     */
+    synchronized boolean giveBack(final Lease lease, final Map<String, String> stackOutputs) {
+
+        final Pool pool = pools.get(lease.fingerprint);
+        if (pool == null || pool.ready.size() + pool.creating.size() >= pool.config.getSize()) {
+            return false;
+        }
+        leasedStacks.remove(lease.getStackName());
+        final WarmStack stack = new WarmStack(lease.stack.stackName, lease.stack.stackId, stackOutputs);
+        pool.ready.add(stack);
+        StackLedger.get()
+                   .record(stack.newCloudFormation(pool.definition)
+                                .ledgerEntry(LEDGER_ID, StackLedger.CREATED));
+        return true;
+    }
+
+    /**
+     * Start creating the stacks missing from the pool. Stacks failing to be created are replaced on the next call.
+     */
+    private void replenish(final Pool pool) {
+
+        for (int missing = pool.config.getSize() - pool.ready.size() - pool.creating.size(); missing > 0; missing--) {
+            final CloudFormation cloudFormation = pool.definition.copy(pool.definition.getExpandedStackName() + "-warm-" + sequence.incrementAndGet(),
+                                                                       newLogger());
+            pool.creating.add(cloudFormation.getExpandedStackName());
+            try {
+                executor.execute(new Creation(pool, cloudFormation));
+            } catch (final RejectedExecutionException e) {
+                pool.creating.remove(cloudFormation.getExpandedStackName());
+                return; // shutting down.
+            }
+        }
+    }
+
+    /**
+     * Delete the ready stacks that waited longer than their pool's maximum idle time, and forget the pools that are
+     * empty. Pools that builds still use are filled again, e.g. after a stack failed to be created.
+     */
+    void evictIdleStacks() {
+
+        final List<Runnable> deletions = new ArrayList<Runnable>();
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            for (final Iterator<Pool> entries = pools.values()
+                                                     .iterator(); entries.hasNext();) {
+                final Pool pool = entries.next();
+                for (final Iterator<WarmStack> stacks = pool.ready.iterator(); stacks.hasNext();) {
+                    final WarmStack stack = stacks.next();
+                    if (now - stack.readySince > pool.config.getMaxIdleMillis()) {
+                        stacks.remove();
+                        deletions.add(new Deletion(stack.newCloudFormation(pool.definition)));
+                    }
+                }
+                if (now - pool.lastUsed <= pool.config.getMaxIdleMillis()) {
+                    replenish(pool);
+                } else if (pool.ready.isEmpty() && pool.creating.isEmpty()) {
+                    entries.remove();
+                }
+            }
+        }
+        for (final Runnable deletion : deletions) {
+            try {
+                executor.execute(deletion);
+            } catch (final RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stop creating stacks and request the deletion of the ready ones, without waiting for it. Stacks being created
+     * are abandoned, their name tells what they were created for.
+     */
+    @Terminator
+    public static void shutdown() {
+
+        INSTANCE.executor.shutdownNow();
+        synchronized (INSTANCE) {
+            for (final Pool pool : INSTANCE.pools.values()) {
+                for (final WarmStack stack : pool.ready) {
+                    try {
+                        // Left in the ledger until the deletion is confirmed on the next startup.
+                        pool.definition.copy(stack.stackName, newLogger())
+                                       .requestDeletion(stack.stackId);
+                    } catch (final RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Failed to delete warm stack " + stack.stackName, e);
+                    }
+                }
+            }
+            INSTANCE.pools.clear();
+        }
+    }
+
+    private static PrintStream newLogger() {
+
+        return new LogTaskListener(LOGGER, Level.FINE).getLogger();
+    }
+
+    /**
+     * The stacks of one fingerprint.
+     */
+    private static final class Pool {
+
+        private final String fingerprint;
+        private final LinkedList<WarmStack> ready = new LinkedList<WarmStack>();
+        /**
+         * The names of the stacks being created.
+         */
+        private final Set<String> creating = new HashSet<String>();
+        /**
+         * When a build last leased a stack or the pool was last prepared.
+         */
+        private long lastUsed;
+
+        /**
+         * A copy of the stack most recently leased for or prepared, which new stacks are copied from.
+         */
+        private CloudFormation definition;
+        private WarmPoolConfig config;
+
+        Pool(final String fingerprint) {
+
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private static final class WarmStack {
+
+        private final String stackName;
+        private final String stackId;
+        private final Map<String, String> stackOutputs;
+        private final long readySince = System.currentTimeMillis();
+
+        WarmStack(final String stackName, final String stackId, final Map<String, String> stackOutputs) {
+
+            this.stackName = stackName;
+            this.stackId = stackId;
+            this.stackOutputs = stackOutputs;
+        }
+
+        CloudFormation newCloudFormation(final CloudFormation definition) {
+
+            final CloudFormation cloudFormation = definition.copy(stackName, newLogger());
+            cloudFormation.adopt(stackId, stackOutputs);
+            return cloudFormation;
+        }
+    }
+
+    /**
+     * A ready stack handed to a build.
+     */
+    static final class Lease {
+
+        private final String fingerprint;
+        private final WarmPoolConfig config;
+        private final WarmStack stack;
+
+        Lease(final String fingerprint, final WarmPoolConfig config, final WarmStack stack) {
+
+            this.fingerprint = fingerprint;
+            this.config = config;
+            this.stack = stack;
+        }
+
+        WarmPoolConfig getConfig() {
+
+            return config;
+        }
+
+        String getStackName() {
+
+            return stack.stackName;
+        }
+
+        String getStackId() {
+
+            return stack.stackId;
+        }
+
+        Map<String, String> getStackOutputs() {
+
+            return stack.stackOutputs;
+        }
+    }
+
+    private final class Creation implements Runnable {
+
+        private final Pool pool;
+        private final CloudFormation cloudFormation;
+
+        Creation(final Pool pool, final CloudFormation cloudFormation) {
+
+            this.pool = pool;
+            this.cloudFormation = cloudFormation;
+        }
+
+        public void run() {
+
+            StackLedger.get()
+                       .record(cloudFormation.ledgerEntry(LEDGER_ID, StackLedger.CREATE));
+            ListenableFuture<Boolean> creation;
+            try {
+                creation = cloudFormation.startCreate();
+            } catch (final RuntimeException e) {
+                creation = Futures.immediateFailedFuture(e);
+            }
+            Futures.addCallback(creation, new FutureCallback<Boolean>() {
+
+                public void onSuccess(final Boolean created) {
+
+                    finished(created);
+                }
+
+                public void onFailure(final Throwable t) {
+
+                    LOGGER.log(Level.WARNING, "Failed to create a warm stack", t);
+                    finished(false);
+                }
+            });
+        }
+
+        /**
+         * Runs on a thread of the {@link StackWaitScheduler}.
+         */
+        private void finished(final boolean created) {
+
+            synchronized (WarmStackPool.this) {
+                pool.creating.remove(cloudFormation.getExpandedStackName());
+                if (created && pools.get(pool.fingerprint) == pool) {
+                    pool.ready.add(new WarmStack(cloudFormation.getExpandedStackName(), cloudFormation.getStackId(), cloudFormation.getStackOutputs()));
+                    StackLedger.get()
+                               .record(cloudFormation.ledgerEntry(LEDGER_ID, StackLedger.CREATED));
+                    return;
+                }
+            }
+            if (cloudFormation.getStackId() == null) {
+                StackLedger.get()
+                           .remove(LEDGER_ID, cloudFormation.getExpandedStackName());
+                return;
+            }
+            // Either the creation failed, or the pool was dropped meanwhile.
+            try {
+                executor.execute(new Deletion(cloudFormation));
+            } catch (final RejectedExecutionException e) {
+                // shutting down, the stack is deleted from the ledger on the next startup.
+            }
+        }
+    }
+
+    /**
+     * Delete a pooled stack, and forget it once it is gone. If it fails, the stack stays in the ledger, to be deleted
+     * on the next startup.
+     */
+    private static final class Deletion implements Runnable {
+
+        private final CloudFormation cloudFormation;
+
+        Deletion(final CloudFormation cloudFormation) {
+
+            this.cloudFormation = cloudFormation;
+        }
+
+        public void run() {
+
+            ListenableFuture<Boolean> deletion;
+            try {
+                deletion = cloudFormation.startDelete();
+            } catch (final RuntimeException e) {
+                deletion = Futures.immediateFailedFuture(e);
+            }
+            Futures.addCallback(deletion, new FutureCallback<Boolean>() {
+
+                public void onSuccess(final Boolean deleted) {
+
+                    if (deleted) {
+                        StackLedger.get()
+                                   .remove(LEDGER_ID, cloudFormation.getExpandedStackName());
+                    }
+                }
+
+                public void onFailure(final Throwable t) {
+
+                    LOGGER.log(Level.WARNING, "Failed to delete warm stack " + cloudFormation.getExpandedStackName(), t);
+                }
+            });
+        }
+    }
+
+    @Extension
+    public static final class IdleStackReaper extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+
+            return TimeUnit.MINUTES.toMillis(1);
+        }
+
+        @Override
+        protected void doRun() {
+
+            get().evictIdleStacks();
+        }
+    }
+
+}
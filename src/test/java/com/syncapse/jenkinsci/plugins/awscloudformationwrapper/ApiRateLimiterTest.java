@@ -0,0 +1,56 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ApiRateLimiterTest {
+
+	private final ApiRateLimiter limiter = new ApiRateLimiter();
+
+	@Test
+	public void calls_within_the_burst_do_not_wait() throws Exception {
+		final long start = System.nanoTime();
+		for (int i = 0; i < 5; i++) {
+			limiter.acquire(1, 5);
+		}
+		assertTrue(elapsedMillis(start) < 500);
+	}
+
+	@Test
+	public void calls_beyond_the_burst_wait_for_the_rate() throws Exception {
+		final long start = System.nanoTime();
+		for (int i = 0; i < 4; i++) {
+			limiter.acquire(10, 2);
+		}
+		// 2 calls at once, then one every 100ms.
+		assertTrue(elapsedMillis(start) >= 150);
+	}
+
+	@Test
+	public void no_rate_means_no_limit() throws Exception {
+		final long start = System.nanoTime();
+		for (int i = 0; i < 1000; i++) {
+			limiter.acquire(0, 1);
+		}
+		assertTrue(elapsedMillis(start) < 500);
+	}
+
+	@Test
+	public void polls_are_told_how_long_to_wait_instead_of_waiting() throws Exception {
+		assertEquals(0, limiter.tryAcquire(10, 1));
+
+		final long wait = limiter.tryAcquire(10, 1);
+
+		assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(100));
+		assertTrue(limiter.tryAcquire(10, 1) > 0);
+	}
+
+	private static long elapsedMillis(final long start) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+}
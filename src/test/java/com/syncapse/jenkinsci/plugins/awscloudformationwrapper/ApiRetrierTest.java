@@ -0,0 +1,138 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.SocketException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.CreateStackRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStacksRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStacksResult;
+
+public class ApiRetrierTest {
+
+	private AmazonCloudFormation client;
+	private ApiRetrier retrier;
+
+	@Before
+	public void setUp() throws Exception {
+		client = mock(AmazonCloudFormation.class);
+		retrier = new ApiRetrier(1, 5, 10000);
+	}
+
+	@Test
+	public void errors_are_classified() throws Exception {
+		assertEquals(ApiRetrier.ErrorKind.THROTTLING, ApiRetrier.classify(serviceException("Throttling", 400)));
+		assertEquals(ApiRetrier.ErrorKind.THROTTLING, ApiRetrier.classify(serviceException("Whatever", 429)));
+		assertEquals(ApiRetrier.ErrorKind.SERVER_ERROR, ApiRetrier.classify(serviceException("InternalFailure", 500)));
+		assertEquals(ApiRetrier.ErrorKind.CLIENT_ERROR, ApiRetrier.classify(serviceException("ValidationError", 400)));
+		assertEquals(ApiRetrier.ErrorKind.CONNECTION,
+				ApiRetrier.classify(new AmazonClientException("Unable to execute HTTP request", new SocketException("Connection reset"))));
+		assertEquals(ApiRetrier.ErrorKind.UNKNOWN, ApiRetrier.classify(new AmazonClientException("Unable to unmarshall response")));
+	}
+
+	@Test
+	public void throttled_call_is_retried_until_it_succeeds() throws Exception {
+		final DescribeStacksResult result = new DescribeStacksResult();
+		when(client.describeStacks(any(DescribeStacksRequest.class)))
+				.thenThrow(serviceException("Throttling", 400))
+				.thenThrow(serviceException("Throttling", 400))
+				.thenReturn(result);
+
+		assertSame(result, retrier.wrap(client).describeStacks(new DescribeStacksRequest()));
+		verify(client, times(3)).describeStacks(any(DescribeStacksRequest.class));
+		assertTrue(retrier.getSummary().startsWith("Retried 2 AWS calls (2 throttling)"));
+		assertNull(retrier.getSummary());
+	}
+
+	@Test
+	public void validation_error_is_not_retried() throws Exception {
+		when(client.describeStacks(any(DescribeStacksRequest.class))).thenThrow(serviceException("ValidationError", 400));
+
+		try {
+			retrier.wrap(client).describeStacks(new DescribeStacksRequest());
+			fail();
+		} catch (final AmazonServiceException e) {
+			assertEquals("ValidationError", e.getErrorCode());
+		}
+		verify(client, times(1)).describeStacks(any(DescribeStacksRequest.class));
+		assertNull(retrier.getSummary());
+	}
+
+	@Test
+	public void stack_creation_is_not_retried_after_a_server_error() throws Exception {
+		when(client.createStack(any(CreateStackRequest.class))).thenThrow(serviceException("InternalFailure", 500));
+
+		try {
+			retrier.wrap(client).createStack(new CreateStackRequest());
+			fail();
+		} catch (final AmazonServiceException e) {
+			assertEquals(500, e.getStatusCode());
+		}
+		verify(client, times(1)).createStack(any(CreateStackRequest.class));
+	}
+
+	@Test
+	public void call_is_not_retried_past_its_deadline() throws Exception {
+		retrier = new ApiRetrier(100, 100, 50);
+		when(client.describeStacks(any(DescribeStacksRequest.class))).thenThrow(serviceException("InternalFailure", 503));
+
+		try {
+			retrier.wrap(client).describeStacks(new DescribeStacksRequest());
+			fail();
+		} catch (final AmazonServiceException e) {
+			assertEquals(503, e.getStatusCode());
+		}
+		verify(client, times(1)).describeStacks(any(DescribeStacksRequest.class));
+	}
+
+	@Test
+	public void throttled_poll_is_run_again_instead_of_sleeping() throws Exception {
+		final DescribeStacksResult result = new DescribeStacksResult();
+		when(client.describeStacks(any(DescribeStacksRequest.class)))
+				.thenThrow(serviceException("Throttling", 400))
+				.thenReturn(result);
+		final AmazonCloudFormation retrying = retrier.wrap(client);
+		final AtomicInteger polls = new AtomicInteger();
+
+		final Future<DescribeStacksResult> future = StackWaitScheduler.get().submit(new StackWaitScheduler.Poll<DescribeStacksResult>() {
+			public DescribeStacksResult poll() {
+				polls.incrementAndGet();
+				return retrying.describeStacks(new DescribeStacksRequest());
+			}
+
+			public long nextDelay() {
+				return 0;
+			}
+		});
+
+		assertSame(result, future.get(5, TimeUnit.SECONDS));
+		assertEquals(2, polls.get());
+		assertTrue(retrier.getSummary().startsWith("Retried 1 AWS calls (1 throttling)"));
+	}
+
+	private static AmazonServiceException serviceException(final String errorCode, final int statusCode) {
+		final AmazonServiceException e = new AmazonServiceException(errorCode);
+		e.setErrorCode(errorCode);
+		e.setStatusCode(statusCode);
+		return e;
+	}
+
+}
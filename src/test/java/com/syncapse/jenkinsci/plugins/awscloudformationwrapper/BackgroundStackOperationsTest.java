@@ -0,0 +1,71 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import hudson.model.Result;
+import hudson.model.AbstractBuild;
+
+import java.io.PrintStream;
+import java.util.concurrent.Executor;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BackgroundStackOperationsTest {
+
+	private static final PrintStream NULL_LOGGER = new PrintStream(new NullOutputStream());
+
+	private BackgroundStackOperations operations; // SUT
+
+	@Mock private AbstractBuild build;
+	@Mock private CloudFormation cloudFormation;
+
+	@Before
+	public void setUp() throws Exception {
+		operations = new BackgroundStackOperations(MoreExecutors.sameThreadExecutor());
+		when(cloudFormation.getExpandedStackName()).thenReturn("stack");
+	}
+
+	@Test
+	public void failed_stack_fails_the_running_build() throws Exception {
+		when(build.isBuilding()).thenReturn(true);
+		when(cloudFormation.startCreate()).thenReturn(Futures.immediateFuture(false));
+
+		operations.submit(build, cloudFormation, DeployMode.CREATE, NULL_LOGGER);
+
+		verify(build).setResult(Result.FAILURE);
+	}
+
+	@Test
+	public void stack_is_deployed_when_asked_to() throws Exception {
+		when(build.isBuilding()).thenReturn(true);
+		when(cloudFormation.startDeploy(any(Executor.class))).thenReturn(Futures.immediateFuture(true));
+
+		operations.submit(build, cloudFormation, DeployMode.CREATE_OR_UPDATE, NULL_LOGGER);
+
+		verify(cloudFormation, never()).startCreate();
+		verify(build, never()).setResult(Result.FAILURE);
+	}
+
+	@Test
+	public void completed_build_is_saved_with_the_timings() throws Exception {
+		when(build.isBuilding()).thenReturn(false);
+		when(cloudFormation.startCreate()).thenReturn(Futures.immediateFuture(false));
+
+		operations.submit(build, cloudFormation, DeployMode.CREATE, NULL_LOGGER);
+
+		verify(build, never()).setResult(Result.FAILURE);
+		verify(build).save();
+	}
+
+}
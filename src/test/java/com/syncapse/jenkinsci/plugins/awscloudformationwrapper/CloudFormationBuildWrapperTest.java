@@ -2,10 +2,13 @@ package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasProperty;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -26,6 +29,9 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+
 @RunWith(MockitoJUnitRunner.class)
 public class CloudFormationBuildWrapperTest {
 
@@ -61,17 +67,107 @@ public class CloudFormationBuildWrapperTest {
 		then_first_stack_is_deleted();
 	}
 
+	@Test
+	public void when_2nd_stack_uses_outputs_of_1st_and_1st_fails_to_create_2nd_is_never_created()
+			throws Exception {
+		when_2nd_stack_references_outputs_of_1st();
+		and_1st_stack_fails_to_create();
+		then_2nd_stack_is_not_created();
+	}
+
+	@Test
+	public void when_2nd_stack_uses_outputs_of_1st_it_is_created_once_1st_is_created()
+			throws Exception {
+		when_2nd_stack_references_outputs_of_1st();
+		final SettableFuture<Boolean> creation = SettableFuture.create();
+		when(mockCF1.startCreate()).thenReturn(creation);
+		when(mockCF2.startCreate()).thenReturn(Futures.immediateFuture(true));
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (final InterruptedException e) {
+					return;
+				}
+				creation.set(true);
+			}
+		}.start();
+
+		assertNotNull(wrapper.setUp(build, launcher, listener));
+		verify(mockCF1, times(1)).startCreate();
+		verify(mockCF2, times(1)).startCreate();
+	}
+
+	@Test
+	public void aborting_a_build_leaves_the_stacks_of_other_builds_alone()
+			throws Exception {
+		when_1_stack_is_entered();
+		doReturn(mockCF1).doReturn(mockCF2).when(wrapper).newCloudFormation(any(StackBean.class),
+				any(AbstractBuild.class), any(EnvVars.class),
+				any(PrintStream.class));
+		when(mockCF2.getAutoDeleteStack()).thenReturn(true);
+		when(mockCF2.startCreate()).thenReturn(SettableFuture.<Boolean> create());
+		when(mockCF2.abort()).thenReturn(Futures.immediateFuture(true));
+		assertNotNull(wrapper.setUp(build, launcher, listener));
+
+		Thread.currentThread().interrupt();
+		try {
+			wrapper.setUp(build, launcher, listener);
+			fail();
+		} catch (final InterruptedException expected) {
+			// the second build was aborted
+		}
+		verify(mockCF2).abort();
+		verify(mockCF1, never()).abort();
+	}
+
+	private void then_2nd_stack_is_not_created() throws Exception {
+		final Environment env = wrapper.setUp(build, launcher, listener);
+		assertNull(env);
+		verify(mockCF1, times(1)).startCreate();
+		verify(mockCF2, never()).startCreate();
+		verify(wrapper, never()).newCloudFormation(
+				((StackBean)argThat(hasProperty("stackName", equalTo("stack2")))),
+				any(AbstractBuild.class), any(EnvVars.class),
+				any(PrintStream.class));
+	}
+
+	private void and_1st_stack_fails_to_create() throws Exception {
+		when(mockCF1.startCreate()).thenReturn(Futures.immediateFuture(false));
+	}
+
+	private void when_2nd_stack_references_outputs_of_1st() throws Exception {
+		final List<StackBean> stackBeans = new ArrayList<StackBean>();
+		stackBeans.add(new StackBean("stack1", "vpc", "stack description",
+				"{resources: }", "", 0, "accessKey", "secretKey", true, null));
+		stackBeans.add(new StackBean("stack2", "app", "stack2 description",
+				"{resources: }", "VpcId=${vpc_VpcId}", 0, "accessKey", "secretKey", true, null));
+
+		wrapper = spy(new CloudFormationBuildWrapper(stackBeans));
+
+		doReturn(mockCF1).when(wrapper).newCloudFormation(
+				((StackBean)argThat(hasProperty("stackName", equalTo("stack1")))),
+				any(AbstractBuild.class), any(EnvVars.class),
+				any(PrintStream.class));
+
+		doReturn(mockCF2).when(wrapper).newCloudFormation(
+				((StackBean)argThat(hasProperty("stackName", equalTo("stack2")))),
+				any(AbstractBuild.class), any(EnvVars.class),
+				any(PrintStream.class));
+	}
+
 	private void then_first_stack_is_deleted() throws Exception {
 		final Environment env = wrapper.setUp(build, launcher, listener);
-		verify(mockCF1, times(1)).create();
-		verify(mockCF2, times(1)).create();
+		verify(mockCF1, times(1)).startCreate();
+		verify(mockCF2, times(1)).startCreate();
 		assertNull(env);
 		verify(mockCF1, times(1)).delete();
 	}
 
 	private void and_2nd_stack_fails_to_create() throws Exception {
-		when(mockCF1.create()).thenReturn(true);
-		when(mockCF2.create()).thenReturn(false);
+		when(mockCF1.startCreate()).thenReturn(Futures.immediateFuture(true));
+		when(mockCF2.startCreate()).thenReturn(Futures.immediateFuture(false));
 	}
 
 	private void when_2_stack_are_entered() throws Exception {
@@ -100,7 +196,7 @@ public class CloudFormationBuildWrapperTest {
 
 	private void then_1_stack_is_created_and_deleted() throws Exception {
 		final Environment env = wrapper.setUp(build, launcher, listener);
-		verify(mockCF1, times(1)).create();
+		verify(mockCF1, times(1)).startCreate();
 		env.tearDown(build, listener);
 		verify(mockCF1, times(1)).delete();
 	}
@@ -118,7 +214,7 @@ public class CloudFormationBuildWrapperTest {
 				any(AbstractBuild.class), any(EnvVars.class),
 				any(PrintStream.class));
 
-		when(mockCF1.create()).thenReturn(true);
+		when(mockCF1.startCreate()).thenReturn(Futures.immediateFuture(true));
 		when(mockCF1.delete()).thenReturn(true);
 	}
 
@@ -0,0 +1,194 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.model.queue.QueueTaskFuture;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import net.sf.json.JSONObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.SingleFileSCM;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+
+/**
+ * Runs many builds using the plugin at once against a {@link CloudFormationSimulator}, and writes a JSON summary of
+ * how the plugin behaved, to compare releases on the same workload.
+ *
+ * Only run by the load-test profile: mvn -Pload-test test. The workload is set with the system properties
+ * loadTest.builds, loadTest.operationMillis, loadTest.latencyMillis and loadTest.sleep, the summary goes to
+ * loadTest.output.
+ */
+public class CloudFormationLoadTest {
+
+	private static final int BUILDS = Integer.getInteger("loadTest.builds", 50);
+	private static final long OPERATION_MILLIS = Long.getLong("loadTest.operationMillis", 5000);
+	private static final long LATENCY_MILLIS = Long.getLong("loadTest.latencyMillis", 20);
+	private static final long SLEEP = Long.getLong("loadTest.sleep", 0);
+	private static final String OUTPUT = System.getProperty("loadTest.output", "target/load-test-summary.json");
+
+	private static final String TEMPLATE = "{\"Resources\": {}}";
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	private final CloudFormationSimulator simulator = new CloudFormationSimulator();
+
+	@Before
+	public void setUp() throws Exception {
+		simulator.setOperationDuration(OPERATION_MILLIS);
+		simulator.setLatency(LATENCY_MILLIS);
+		CloudFormationClients.get().setClientFactory(new CloudFormationClients.ClientFactory() {
+			public AmazonCloudFormation newClient(final String awsAccessKey, final String awsSecretKey, final Region region) {
+				return simulator.getClient();
+			}
+		});
+		j.jenkins.setNumExecutors(BUILDS);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		CloudFormationClients.get().setClientFactory(null);
+	}
+
+	@Test
+	public void concurrent_builds() throws Exception {
+		final List<FreeStyleProject> projects = new ArrayList<FreeStyleProject>();
+		for (int i = 0; i < BUILDS; i++) {
+			projects.add(i % 2 == 0 ? wrapperProject("wrapper-" + i) : buildStepProject("step-" + i));
+		}
+
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		final HeapSampler heap = new HeapSampler(memory);
+		System.gc();
+		final long heapBefore = memory.getHeapMemoryUsage().getUsed();
+		final long sleptBefore = CloudFormation.getSleptMillis();
+		threads.resetPeakThreadCount();
+		heap.start();
+
+		final long start = System.currentTimeMillis();
+		final List<QueueTaskFuture<FreeStyleBuild>> builds = new ArrayList<QueueTaskFuture<FreeStyleBuild>>();
+		for (final FreeStyleProject project : projects) {
+			builds.add(project.scheduleBuild2(0));
+		}
+		final List<Long> latencies = new ArrayList<Long>();
+		for (final QueueTaskFuture<FreeStyleBuild> future : builds) {
+			final FreeStyleBuild build = future.get();
+			assertEquals(build.getLog(), Result.SUCCESS, build.getResult());
+			latencies.add(build.getStartTimeInMillis() + build.getDuration() - start);
+		}
+		final long elapsed = System.currentTimeMillis() - start;
+		heap.interrupt();
+		heap.join();
+
+		assertEquals(0, simulator.getStackCount());
+
+		Collections.sort(latencies);
+		final JSONObject summary = new JSONObject();
+		summary.put("builds", BUILDS);
+		summary.put("operationMillis", OPERATION_MILLIS);
+		summary.put("latencyMillis", LATENCY_MILLIS);
+		summary.put("elapsedMillis", elapsed);
+		summary.put("describeStacksPerSecond", simulator.getCallCount("describeStacks") * 1000.0 / elapsed);
+		summary.put("apiCallsPerSecond", simulator.getTotalCallCount() * 1000.0 / elapsed);
+		summary.put("apiCalls", simulator.getCallCounts());
+		summary.put("peakThreadCount", threads.getPeakThreadCount());
+		summary.put("heapUsedBeforeBytes", heapBefore);
+		summary.put("peakHeapUsedBytes", heap.peak);
+		summary.put("sleptMillis", CloudFormation.getSleptMillis() - sleptBefore);
+		final JSONObject latency = new JSONObject();
+		latency.put("p50", percentile(latencies, 50));
+		latency.put("p90", percentile(latencies, 90));
+		latency.put("p99", percentile(latencies, 99));
+		latency.put("max", latencies.get(latencies.size() - 1));
+		summary.put("buildLatencyMillis", latency);
+
+		write(summary);
+	}
+
+	private FreeStyleProject wrapperProject(final String name) throws IOException {
+		final FreeStyleProject project = j.createFreeStyleProject(name);
+		project.setScm(new SingleFileSCM("stack.json", TEMPLATE));
+		project.getBuildWrappersList().add(new CloudFormationBuildWrapper(Collections.singletonList(
+				new StackBean("load-${JOB_NAME}", "", "", "stack.json", "", 0, "accessKey", "secretKey", true, "us-east-1"))));
+		return project;
+	}
+
+	/**
+	 * Creates its stack with the build step and deletes it with the notifier.
+	 */
+	private FreeStyleProject buildStepProject(final String name) throws IOException {
+		final FreeStyleProject project = j.createFreeStyleProject(name);
+		project.setScm(new SingleFileSCM("stack.json", TEMPLATE));
+		project.getBuildersList().add(new CloudFormationBuildStep(Collections.singletonList(
+				new PostBuildStackBean("load-${JOB_NAME}", "", "", "stack.json", "", 0, "accessKey", "secretKey", "us-east-1", SLEEP))));
+		project.getPublishersList().add(new CloudFormationNotifier(Collections.singletonList(
+				new SimpleStackBean("load-${JOB_NAME}", "", "accessKey", "secretKey", "us-east-1", false))));
+		return project;
+	}
+
+	private static long percentile(final List<Long> sorted, final int percentile) {
+		final int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+		return sorted.get(Math.max(0, index));
+	}
+
+	private static void write(final JSONObject summary) throws IOException {
+		final File file = new File(OUTPUT);
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		final Writer writer = new FileWriter(file);
+		try {
+			writer.write(summary.toString(2));
+		} finally {
+			writer.close();
+		}
+		System.out.println(summary.toString(2));
+	}
+
+	/**
+	 * Samples the heap usage, as the peak of the memory pools also counts garbage from before the test.
+	 */
+	private static final class HeapSampler extends Thread {
+
+		private final MemoryMXBean memory;
+		private volatile long peak;
+
+		HeapSampler(final MemoryMXBean memory) {
+			super("Load test heap sampler");
+			this.memory = memory;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (!isInterrupted()) {
+				peak = Math.max(peak, memory.getHeapMemoryUsage().getUsed());
+				try {
+					Thread.sleep(100);
+				} catch (final InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+}
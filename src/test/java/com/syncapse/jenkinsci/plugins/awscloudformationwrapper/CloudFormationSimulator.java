@@ -0,0 +1,374 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.CreateStackRequest;
+import com.amazonaws.services.cloudformation.model.CreateStackResult;
+import com.amazonaws.services.cloudformation.model.DeleteStackRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsResult;
+import com.amazonaws.services.cloudformation.model.DescribeStacksRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStacksResult;
+import com.amazonaws.services.cloudformation.model.GetTemplateRequest;
+import com.amazonaws.services.cloudformation.model.GetTemplateResult;
+import com.amazonaws.services.cloudformation.model.ListStacksRequest;
+import com.amazonaws.services.cloudformation.model.ListStacksResult;
+import com.amazonaws.services.cloudformation.model.Output;
+import com.amazonaws.services.cloudformation.model.Parameter;
+import com.amazonaws.services.cloudformation.model.Stack;
+import com.amazonaws.services.cloudformation.model.StackEvent;
+import com.amazonaws.services.cloudformation.model.StackSummary;
+import com.amazonaws.services.cloudformation.model.UpdateStackRequest;
+import com.amazonaws.services.cloudformation.model.UpdateStackResult;
+
+/**
+ * In-process stand-in for the CloudFormation API, to see how the plugin behaves with many stacks without an AWS
+ * account. Plug it in by overriding {@link CloudFormation#getAWSClient()} to return {@link #getClient()}.
+ *
+ * Stacks go through the statuses of the real service, taking {@link #setOperationDuration(long)} to get from an in
+ * progress status to the final one, and every transition adds an event. Listing stacks and describing events is
+ * paginated. Calls can be slowed down and throttled, and every call is counted per API.
+ */
+public class CloudFormationSimulator {
+
+	private final Map<String, SimulatedStack> stacksById = new LinkedHashMap<String, SimulatedStack>();
+	private final ConcurrentMap<String, AtomicInteger> calls = new ConcurrentHashMap<String, AtomicInteger>();
+	private final Random random = new Random(0);
+
+	private long operationDuration = 100;
+	private long latency;
+	private double throttlingRate;
+	private int pageSize = 100;
+	private boolean failCreation;
+	private Map<String, String> outputs = Collections.singletonMap("Endpoint", "http://localhost");
+
+	private final AmazonCloudFormation client = (AmazonCloudFormation) Proxy.newProxyInstance(
+			AmazonCloudFormation.class.getClassLoader(), new Class<?>[] { AmazonCloudFormation.class }, new Dispatcher());
+
+	public AmazonCloudFormation getClient() {
+		return client;
+	}
+
+	/**
+	 * @param millis how long stacks stay in progress after being created, updated or deleted.
+	 */
+	public void setOperationDuration(final long millis) {
+		this.operationDuration = millis;
+	}
+
+	/**
+	 * @param millis added to every call.
+	 */
+	public void setLatency(final long millis) {
+		this.latency = millis;
+	}
+
+	/**
+	 * @param rate the share of calls, between 0 and 1, failing with a Throttling error.
+	 */
+	public void setThrottlingRate(final double rate) {
+		this.throttlingRate = rate;
+	}
+
+	public void setPageSize(final int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * @param failCreation whether created stacks end up in ROLLBACK_COMPLETE.
+	 */
+	public void setFailCreation(final boolean failCreation) {
+		this.failCreation = failCreation;
+	}
+
+	public void setOutputs(final Map<String, String> outputs) {
+		this.outputs = outputs;
+	}
+
+	/**
+	 * @return the number of calls of the given API, e.g. "describeStacks".
+	 */
+	public int getCallCount(final String api) {
+		final AtomicInteger count = calls.get(api);
+		return count != null ? count.get() : 0;
+	}
+
+	/**
+	 * @return the number of calls of every API called at least once.
+	 */
+	public Map<String, Integer> getCallCounts() {
+		final Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (final Map.Entry<String, AtomicInteger> entry : calls.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().get());
+		}
+		return counts;
+	}
+
+	public int getTotalCallCount() {
+		int total = 0;
+		for (final AtomicInteger count : calls.values()) {
+			total += count.get();
+		}
+		return total;
+	}
+
+	/**
+	 * @return the number of stacks that are not deleted.
+	 */
+	public synchronized int getStackCount() {
+		int count = 0;
+		for (final SimulatedStack stack : stacksById.values()) {
+			if (!"DELETE_COMPLETE".equals(stack.getStatus())) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	synchronized CreateStackResult createStack(final CreateStackRequest request) {
+		final SimulatedStack existing = findByName(request.getStackName());
+		if (existing != null) {
+			throw error("AlreadyExistsException", "Stack [" + request.getStackName() + "] already exists");
+		}
+		final SimulatedStack stack = new SimulatedStack(request.getStackName(), request.getTemplateBody(), request.getParameters());
+		stack.start("CREATE_IN_PROGRESS", failCreation ? "ROLLBACK_COMPLETE" : "CREATE_COMPLETE");
+		stacksById.put(stack.stackId, stack);
+		return new CreateStackResult().withStackId(stack.stackId);
+	}
+
+	synchronized UpdateStackResult updateStack(final UpdateStackRequest request) {
+		final SimulatedStack stack = find(request.getStackName());
+		if (stack.getStatus().endsWith("_IN_PROGRESS")) {
+			throw error("ValidationError", "Stack:" + stack.stackId + " is in " + stack.getStatus() + " state and can not be updated.");
+		}
+		if (stack.templateBody.equals(request.getTemplateBody()) && stack.parameters.equals(request.getParameters())) {
+			throw error("ValidationError", "No updates are to be performed.");
+		}
+		stack.templateBody = request.getTemplateBody();
+		stack.parameters = request.getParameters();
+		stack.start("UPDATE_IN_PROGRESS", "UPDATE_COMPLETE");
+		return new UpdateStackResult().withStackId(stack.stackId);
+	}
+
+	synchronized void deleteStack(final DeleteStackRequest request) {
+		final SimulatedStack stack = findByName(request.getStackName());
+		if (stack != null && !"DELETE_COMPLETE".equals(stack.getStatus())) {
+			stack.start("DELETE_IN_PROGRESS", "DELETE_COMPLETE");
+		}
+	}
+
+	synchronized DescribeStacksResult describeStacks(final DescribeStacksRequest request) {
+		final List<Stack> stacks = new ArrayList<Stack>();
+		if (request == null || request.getStackName() == null) {
+			for (final SimulatedStack stack : stacksById.values()) {
+				if (!"DELETE_COMPLETE".equals(stack.getStatus())) {
+					stacks.add(stack.toStack());
+				}
+			}
+		} else {
+			stacks.add(find(request.getStackName()).toStack());
+		}
+		return new DescribeStacksResult().withStacks(stacks);
+	}
+
+	synchronized DescribeStackEventsResult describeStackEvents(final DescribeStackEventsRequest request) {
+		final SimulatedStack stack = find(request.getStackName());
+		final List<StackEvent> events = new ArrayList<StackEvent>(stack.getEvents());
+		Collections.reverse(events); // newest first.
+		final int start = request.getNextToken() != null ? Integer.parseInt(request.getNextToken()) : 0;
+		final int end = Math.min(events.size(), start + pageSize);
+		return new DescribeStackEventsResult().withStackEvents(new ArrayList<StackEvent>(events.subList(start, end)))
+				.withNextToken(end < events.size() ? String.valueOf(end) : null);
+	}
+
+	synchronized ListStacksResult listStacks(final ListStacksRequest request) {
+		final List<StackSummary> summaries = new ArrayList<StackSummary>();
+		for (final SimulatedStack stack : stacksById.values()) {
+			final String status = stack.getStatus();
+			if (request == null || request.getStackStatusFilters() == null || request.getStackStatusFilters().isEmpty()
+					|| request.getStackStatusFilters().contains(status)) {
+				summaries.add(new StackSummary().withStackId(stack.stackId).withStackName(stack.stackName)
+						.withStackStatus(status).withCreationTime(new Date(stack.creationTime)));
+			}
+		}
+		final int start = request != null && request.getNextToken() != null ? Integer.parseInt(request.getNextToken()) : 0;
+		final int end = Math.min(summaries.size(), start + pageSize);
+		return new ListStacksResult().withStackSummaries(new ArrayList<StackSummary>(summaries.subList(start, end)))
+				.withNextToken(end < summaries.size() ? String.valueOf(end) : null);
+	}
+
+	synchronized GetTemplateResult getTemplate(final GetTemplateRequest request) {
+		return new GetTemplateResult().withTemplateBody(find(request.getStackName()).templateBody);
+	}
+
+	/**
+	 * Stacks are found by id whatever their status, and by name unless deleted, like the real service does.
+	 */
+	private SimulatedStack find(final String stackNameOrId) {
+		SimulatedStack stack = stacksById.get(stackNameOrId);
+		if (stack == null) {
+			stack = findByName(stackNameOrId);
+		}
+		if (stack == null) {
+			throw error("ValidationError", "Stack with id " + stackNameOrId + " does not exist");
+		}
+		return stack;
+	}
+
+	private SimulatedStack findByName(final String stackNameOrId) {
+		final SimulatedStack byId = stacksById.get(stackNameOrId);
+		if (byId != null) {
+			return "DELETE_COMPLETE".equals(byId.getStatus()) ? null : byId;
+		}
+		for (final SimulatedStack stack : stacksById.values()) {
+			if (stack.stackName.equals(stackNameOrId) && !"DELETE_COMPLETE".equals(stack.getStatus())) {
+				return stack;
+			}
+		}
+		return null;
+	}
+
+	private static AmazonServiceException error(final String errorCode, final String message) {
+		final AmazonServiceException e = new AmazonServiceException(message);
+		e.setErrorCode(errorCode);
+		e.setStatusCode(400);
+		e.setServiceName("AmazonCloudFormation");
+		return e;
+	}
+
+	private final class SimulatedStack {
+
+		private final String stackId = "arn:aws:cloudformation:us-east-1:123456789012:stack/" + UUID.randomUUID();
+		private final String stackName;
+		private final long creationTime = System.currentTimeMillis();
+		private final List<StackEvent> events = new ArrayList<StackEvent>();
+		private String templateBody;
+		private List<Parameter> parameters;
+
+		private String inProgressStatus;
+		private String finalStatus;
+		private long operationEnd;
+		private boolean finalEventAdded;
+
+		SimulatedStack(final String stackName, final String templateBody, final List<Parameter> parameters) {
+			this.stackName = stackName;
+			this.templateBody = templateBody;
+			this.parameters = parameters != null ? parameters : new ArrayList<Parameter>();
+		}
+
+		void start(final String inProgressStatus, final String finalStatus) {
+			this.inProgressStatus = inProgressStatus;
+			this.finalStatus = finalStatus;
+			this.operationEnd = System.currentTimeMillis() + operationDuration;
+			this.finalEventAdded = false;
+			addEvent(inProgressStatus, "User Initiated");
+		}
+
+		String getStatus() {
+			if (System.currentTimeMillis() < operationEnd) {
+				return inProgressStatus;
+			}
+			if (!finalEventAdded) {
+				finalEventAdded = true;
+				addEvent(finalStatus, null);
+			}
+			return finalStatus;
+		}
+
+		List<StackEvent> getEvents() {
+			getStatus();
+			return events;
+		}
+
+		Stack toStack() {
+			final String status = getStatus();
+			final Stack stack = new Stack().withStackId(stackId).withStackName(stackName).withStackStatus(status)
+					.withParameters(parameters).withCreationTime(new Date(creationTime));
+			if (status.endsWith("_COMPLETE") && !status.startsWith("DELETE") && !status.startsWith("ROLLBACK")) {
+				final List<Output> stackOutputs = new ArrayList<Output>();
+				for (final Map.Entry<String, String> output : outputs.entrySet()) {
+					stackOutputs.add(new Output().withOutputKey(output.getKey()).withOutputValue(output.getValue()));
+				}
+				stack.setOutputs(stackOutputs);
+			}
+			return stack;
+		}
+
+		private void addEvent(final String status, final String reason) {
+			events.add(new StackEvent().withEventId(UUID.randomUUID().toString()).withStackId(stackId).withStackName(stackName)
+					.withLogicalResourceId(stackName).withResourceType("AWS::CloudFormation::Stack").withResourceStatus(status)
+					.withResourceStatusReason(reason).withTimestamp(new Date()));
+		}
+	}
+
+	/**
+	 * Counts, delays and throttles the calls before handing them to the simulator method of the same name.
+	 */
+	private final class Dispatcher implements InvocationHandler {
+
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+			if (method.getDeclaringClass() == Object.class) {
+				return method.invoke(this, args);
+			}
+			final String api = method.getName();
+			if (api.equals("shutdown") || api.startsWith("set")) {
+				return null;
+			}
+
+			AtomicInteger count = calls.get(api);
+			if (count == null) {
+				calls.putIfAbsent(api, new AtomicInteger());
+				count = calls.get(api);
+			}
+			count.incrementAndGet();
+
+			if (latency > 0) {
+				Thread.sleep(latency);
+			}
+			if (isThrottled()) {
+				throw error("Throttling", "Rate exceeded");
+			}
+
+			final Method target = findTarget(api);
+			try {
+				// Calls without a request, like describeStacks(), get a null one.
+				return target.invoke(CloudFormationSimulator.this, args != null ? args[0] : null);
+			} catch (final InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		private Method findTarget(final String api) {
+			for (final Method method : CloudFormationSimulator.class.getDeclaredMethods()) {
+				if (method.getName().equals(api) && method.getParameterTypes().length == 1) {
+					return method;
+				}
+			}
+			throw new UnsupportedOperationException("The simulator does not support " + api);
+		}
+
+		private boolean isThrottled() {
+			synchronized (random) {
+				return throttlingRate > 0 && random.nextDouble() < throttlingRate;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import hudson.EnvVars;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.ListStacksRequest;
+
+public class CloudFormationSimulatorTest {
+
+	private static final PrintStream NULL_LOGGER = new PrintStream(new NullOutputStream());
+
+	private CloudFormationSimulator simulator;
+
+	@Before
+	public void setUp() throws Exception {
+		simulator = new CloudFormationSimulator();
+		simulator.setOperationDuration(20);
+	}
+
+	@Test
+	public void concurrent_stacks_are_created_and_deleted() throws Exception {
+		final int stacks = 50;
+		final ExecutorService executor = Executors.newFixedThreadPool(stacks);
+		try {
+			final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < stacks; i++) {
+				final CloudFormation cf = newCloudFormation("stack" + i);
+				results.add(executor.submit(new Callable<Boolean>() {
+					public Boolean call() throws Exception {
+						return cf.create() && cf.getOutputs().containsKey(cf.getExpandedStackName() + "_Endpoint") && cf.delete();
+					}
+				}));
+			}
+			for (final Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(0, simulator.getStackCount());
+		assertEquals(stacks, simulator.getCallCount("createStack"));
+		assertEquals(stacks, simulator.getCallCount("deleteStack"));
+	}
+
+	@Test
+	public void failed_creation_is_reported() throws Exception {
+		simulator.setFailCreation(true);
+		assertFalse(newCloudFormation("stack").create());
+	}
+
+	@Test
+	public void stacks_are_listed_page_by_page() throws Exception {
+		simulator.setOperationDuration(0);
+		simulator.setPageSize(2);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(newCloudFormation("app-" + i).create());
+		}
+
+		assertEquals(5, StackSummaryIndex.load(simulator.getClient()).getStacksWithPrefix("app-").size());
+		assertEquals(3, simulator.getCallCount("listStacks"));
+	}
+
+	@Test
+	public void operations_are_timed() throws Exception {
+		final CloudFormation cf = newCloudFormation("stack");
+		assertTrue(cf.create());
+		assertTrue(cf.delete());
+
+		final List<StackTiming> timings = cf.takeTimings();
+		assertEquals(2, timings.size());
+		assertEquals("create", timings.get(0).getOperation());
+		assertEquals("delete", timings.get(1).getOperation());
+		for (final StackTiming timing : timings) {
+			assertTrue(timing.isSuccessful());
+			assertTrue(timing.getPolls() > 0);
+			assertTrue(timing.getApiCalls() > timing.getPolls());
+			assertTrue(timing.getTerminalMillis() >= 20);
+		}
+		assertTrue(cf.takeTimings().isEmpty());
+	}
+
+	@Test
+	public void interrupted_creation_deletes_the_stack() throws Exception {
+		simulator.setOperationDuration(300);
+		final CloudFormation cf = newCloudFormation("stack");
+		cf.setAbortPolicy(AbortPolicy.DELETE_AND_WAIT);
+		final Thread creator = Thread.currentThread();
+		final Thread aborter = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (simulator.getCallCount("createStack") == 0) {
+						Thread.sleep(5);
+					}
+					Thread.sleep(50);
+				} catch (final InterruptedException e) {
+					return;
+				}
+				creator.interrupt();
+			}
+		};
+		aborter.start();
+
+		try {
+			cf.create();
+			fail();
+		} catch (final InterruptedException expected) {
+			// the build was aborted
+		}
+		aborter.join();
+		assertEquals(0, simulator.getStackCount());
+		assertEquals(1, simulator.getCallCount("deleteStack"));
+	}
+
+	@Test(expected = AmazonServiceException.class)
+	public void throttled_calls_fail_with_a_throttling_error() throws Exception {
+		simulator.setThrottlingRate(1);
+		simulator.getClient().listStacks(new ListStacksRequest());
+	}
+
+	private CloudFormation newCloudFormation(final String stackName) {
+		final AmazonCloudFormation client = simulator.getClient();
+		return new CloudFormation(NULL_LOGGER, stackName, "", "{}", new HashMap<String, String>(), -12345,
+				"accessKey", "secretKey", true, new EnvVars(), false) {
+			@Override
+			protected AmazonCloudFormation getAWSClient() {
+				return client;
+			}
+		};
+	}
+
+}
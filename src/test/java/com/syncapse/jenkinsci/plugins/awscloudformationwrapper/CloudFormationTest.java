@@ -1,8 +1,12 @@
 package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
 
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasProperty;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -17,21 +21,27 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.cloudformation.AmazonCloudFormation;
 import com.amazonaws.services.cloudformation.model.CreateStackRequest;
 import com.amazonaws.services.cloudformation.model.CreateStackResult;
+import com.amazonaws.services.cloudformation.model.DeleteStackRequest;
 import com.amazonaws.services.cloudformation.model.DescribeStackEventsRequest;
 import com.amazonaws.services.cloudformation.model.DescribeStackEventsResult;
 import com.amazonaws.services.cloudformation.model.DescribeStacksRequest;
 import com.amazonaws.services.cloudformation.model.DescribeStacksResult;
+import com.amazonaws.services.cloudformation.model.GetTemplateRequest;
+import com.amazonaws.services.cloudformation.model.GetTemplateResult;
 import com.amazonaws.services.cloudformation.model.Stack;
 import com.amazonaws.services.cloudformation.model.StackStatus;
+import com.amazonaws.services.cloudformation.model.UpdateStackRequest;
 
 @RunWith(MockitoJUnitRunner.class)
 public class CloudFormationTest {
 
 	private static final String TEST_STACK = "testStack";
 	private static final String TEST_STACK_PREFIX_OUTPUT = "stack_prefix";
+	private static final String TEST_STACK_ID = "arn:aws:cloudformation:us-east-1:123456789012:stack/testStack/1";
 
 	private CloudFormation cf; // SUT
 
@@ -55,7 +65,7 @@ public class CloudFormationTest {
 		};
 
 		when(awsClient.createStack(any(CreateStackRequest.class))).thenReturn(
-				createResultWithId(TEST_STACK));
+				createResultWithId(TEST_STACK_ID));
 		when(
 				awsClient
 						.describeStackEvents(any(DescribeStackEventsRequest.class)))
@@ -86,19 +96,78 @@ public class CloudFormationTest {
 
 	@Test
 	public void delete_waits_for_stack_to_be_deleted() throws Exception {
-		when(awsClient.describeStacks()).thenReturn(stackDeletingResult(),
+		when(awsClient.describeStacks(any(DescribeStacksRequest.class))).thenReturn(stackDeletingResult(),
 				stackDeletingResult(), stackDeleteSuccessfulResult());
 		cf.delete();
-		verify(awsClient, times(3)).describeStacks();
+		verify(awsClient, times(3)).describeStacks(any(DescribeStacksRequest.class));
+		verify(awsClient, never()).describeStacks();
 	}
 
 	@Test
 	public void delete_returns_false_when_stack_fails_to_delete()
 			throws Exception {
-		when(awsClient.describeStacks()).thenReturn(stackDeleteFailedResult());
+		when(awsClient.describeStacks(any(DescribeStacksRequest.class))).thenReturn(stackDeleteFailedResult());
 		assertFalse(cf.delete());
 	}
 
+	@Test
+	public void describe_and_delete_use_the_id_of_the_created_stack()
+			throws Exception {
+		when(awsClient.describeStacks(any(DescribeStacksRequest.class)))
+				.thenReturn(stackCompletedResult(), stackDeleteSuccessfulResult());
+		assertTrue(cf.create());
+		assertTrue(cf.delete());
+		verify(awsClient, times(2)).describeStacks(
+				(DescribeStacksRequest) argThat(hasProperty("stackName", equalTo(TEST_STACK_ID))));
+		verify(awsClient).deleteStack(
+				(DeleteStackRequest) argThat(hasProperty("stackName", equalTo(TEST_STACK_ID))));
+	}
+
+	@Test
+	public void delete_of_a_stack_that_does_not_exist_succeeds()
+			throws Exception {
+		final AmazonServiceException missing = new AmazonServiceException("Stack with id testStack does not exist");
+		missing.setErrorCode("ValidationError");
+		when(awsClient.describeStacks(any(DescribeStacksRequest.class))).thenThrow(missing);
+		assertTrue(cf.delete());
+		verify(awsClient, never()).deleteStack(any(DeleteStackRequest.class));
+	}
+
+	@Test
+	public void deploy_of_an_unchanged_stack_does_not_update_it()
+			throws Exception {
+		when(awsClient.describeStacks(any(DescribeStacksRequest.class)))
+				.thenReturn(stackCompletedResult());
+		when(awsClient.getTemplate(any(GetTemplateRequest.class)))
+				.thenReturn(new GetTemplateResult().withTemplateBody(recipeBody));
+		assertTrue(cf.deploy());
+		verify(awsClient, never()).createStack(any(CreateStackRequest.class));
+		verify(awsClient, never()).updateStack(any(UpdateStackRequest.class));
+	}
+
+	@Test
+	public void deploy_of_a_changed_stack_updates_it() throws Exception {
+		when(awsClient.describeStacks(any(DescribeStacksRequest.class)))
+				.thenReturn(stackCompletedResult(),
+						describeStacksResultWithStatus(StackStatus.UPDATE_IN_PROGRESS),
+						describeStacksResultWithStatus(StackStatus.UPDATE_COMPLETE));
+		when(awsClient.getTemplate(any(GetTemplateRequest.class)))
+				.thenReturn(new GetTemplateResult().withTemplateBody("old recipe body"));
+		assertTrue(cf.deploy());
+		verify(awsClient).updateStack(any(UpdateStackRequest.class));
+		verify(awsClient, never()).createStack(any(CreateStackRequest.class));
+	}
+
+	@Test
+	public void deploy_of_a_missing_stack_creates_it() throws Exception {
+		final AmazonServiceException missing = new AmazonServiceException("Stack with id testStack does not exist");
+		missing.setErrorCode("ValidationError");
+		when(awsClient.describeStacks(any(DescribeStacksRequest.class)))
+				.thenThrow(missing).thenReturn(stackCompletedResult());
+		assertTrue(cf.deploy());
+		verify(awsClient).createStack(any(CreateStackRequest.class));
+	}
+
 	private DescribeStacksResult stackDeleteFailedResult() {
 		return describeStacksResultWithStatus(StackStatus.DELETE_FAILED);
 	}
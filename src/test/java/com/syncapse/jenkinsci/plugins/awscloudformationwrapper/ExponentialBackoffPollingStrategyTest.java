@@ -0,0 +1,52 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ExponentialBackoffPollingStrategyTest {
+
+	private static final String IN_PROGRESS = "CREATE_IN_PROGRESS";
+
+	@Test
+	public void delay_grows_and_is_capped_by_max_interval() {
+		final PollingStrategy.Schedule schedule = new ExponentialBackoffPollingStrategy(2, 10, 2).newSchedule();
+
+		for (int i = 0; i < 20; i++) {
+			final long delay = schedule.nextDelay(IN_PROGRESS);
+			assertTrue(delay >= 1000);
+			assertTrue(delay <= 10000);
+		}
+		// After many polls the (jittered) delay stays in the upper half of the cap.
+		assertTrue(schedule.nextDelay(IN_PROGRESS) >= 5000);
+	}
+
+	@Test
+	public void first_delay_is_at_most_the_initial_interval() {
+		final PollingStrategy.Schedule schedule = new ExponentialBackoffPollingStrategy(2, 90, 1.5).newSchedule();
+
+		final long delay = schedule.nextDelay(IN_PROGRESS);
+		assertTrue(delay >= 1000);
+		assertTrue(delay <= 2000);
+	}
+
+	@Test
+	public void delay_goes_back_to_initial_interval_when_status_changes() {
+		final PollingStrategy.Schedule schedule = new ExponentialBackoffPollingStrategy(2, 60, 3).newSchedule();
+
+		for (int i = 0; i < 10; i++) {
+			schedule.nextDelay(IN_PROGRESS);
+		}
+		assertTrue(schedule.nextDelay("ROLLBACK_IN_PROGRESS") <= 2000);
+	}
+
+	@Test
+	public void invalid_values_fall_back_to_defaults() {
+		final ExponentialBackoffPollingStrategy strategy = new ExponentialBackoffPollingStrategy(0, 0, 0);
+
+		assertTrue(strategy.getInitialInterval() == ExponentialBackoffPollingStrategy.DEFAULT_INITIAL_INTERVAL);
+		assertTrue(strategy.getMaxInterval() == ExponentialBackoffPollingStrategy.DEFAULT_MAX_INTERVAL);
+		assertTrue(strategy.getMultiplier() == ExponentialBackoffPollingStrategy.DEFAULT_MULTIPLIER);
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import hudson.EnvVars;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ParameterParserTest {
+
+	private final EnvVars env = new EnvVars();
+
+	@Test
+	public void values_are_split_at_their_first_equals_sign() throws Exception {
+		final Map<String, String> parameters = parse("UserData=YWJjZA==;Url=jdbc:mysql://db/app?a=b&c=d");
+
+		assertEquals("YWJjZA==", parameters.get("UserData"));
+		assertEquals("jdbc:mysql://db/app?a=b&c=d", parameters.get("Url"));
+	}
+
+	@Test
+	public void quoted_values_keep_separators_and_spaces() throws Exception {
+		final Map<String, String> parameters = parse("Url = \"jdbc:x;a=b,c\", Banner = ' hello ', Quote=\"say \\\"hi\\\"\"");
+
+		assertEquals("jdbc:x;a=b,c", parameters.get("Url"));
+		assertEquals(" hello ", parameters.get("Banner"));
+		assertEquals("say \"hi\"", parameters.get("Quote"));
+	}
+
+	@Test
+	public void backslash_escapes_separators_only() throws Exception {
+		final Map<String, String> parameters = parse("List=a\\,b, Path=C:\\dir\\file");
+
+		assertEquals("a,b", parameters.get("List"));
+		assertEquals("C:\\dir\\file", parameters.get("Path"));
+	}
+
+	@Test
+	public void quotes_inside_a_value_are_kept() throws Exception {
+		assertEquals("{\"a\":\"b\"}", parse("Json={\"a\":\"b\"}").get("Json"));
+	}
+
+	@Test
+	public void empty_pairs_are_ignored() throws Exception {
+		assertEquals(2, parse("a=1;;b=2;").size());
+	}
+
+	@Test
+	public void compiled_parameters_are_expanded_for_each_build() throws Exception {
+		final ParameterParser.Parameters compiled = ParameterParser.compile("Vpc=${VPC};Name=fixed");
+
+		env.put("VPC", "vpc-1");
+		assertEquals("vpc-1", compiled.expand(env).get("Vpc"));
+		env.put("VPC", "vpc-2");
+		assertEquals("vpc-2", compiled.expand(env).get("Vpc"));
+		assertEquals("fixed", compiled.expand(env).get("Name"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void pair_without_equals_sign_is_rejected() throws Exception {
+		parse("key1=value1,key2");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unterminated_quote_is_rejected() throws Exception {
+		parse("key1='value1");
+	}
+
+	@Test
+	public void parameters_file_can_be_json_or_properties() throws Exception {
+		env.put("ENV", "prod");
+		final String cli = "[{\"ParameterKey\": \"Env\", \"ParameterValue\": \"${ENV}\"}, {\"ParameterKey\": \"Size\", \"ParameterValue\": \"3\"}]";
+
+		assertEquals("prod", ParameterParser.compileFile(cli).expand(env).get("Env"));
+		assertEquals("3", ParameterParser.compileFile(cli).expand(env).get("Size"));
+		assertEquals("a=b", ParameterParser.compileFile("{\"Query\": \"a=b\"}").expand(env).get("Query"));
+		assertEquals("a;b", ParameterParser.compileFile("# comment\nList=a;b\n").expand(env).get("List"));
+	}
+
+	private Map<String, String> parse(final String parameters) {
+		return ParameterParser.compile(parameters).expand(env);
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.amazonaws.services.cloudformation.model.StackEvent;
+import com.syncapse.jenkinsci.plugins.awscloudformationwrapper.ResourceTimingReport.ResourceTiming;
+
+public class StackEventAnalyzerTest {
+
+	private final StackEventAnalyzer analyzer = new StackEventAnalyzer("stack");
+
+	@Test
+	public void resources_are_timed_from_first_progress_to_completion() throws Exception {
+		add(0, "stack", "AWS::CloudFormation::Stack", "CREATE_IN_PROGRESS");
+		add(1, "Queue", "AWS::SQS::Queue", "CREATE_IN_PROGRESS");
+		add(2, "Queue", "AWS::SQS::Queue", "CREATE_IN_PROGRESS");
+		add(5, "Queue", "AWS::SQS::Queue", "CREATE_COMPLETE");
+		add(6, "stack", "AWS::CloudFormation::Stack", "CREATE_COMPLETE");
+
+		final List<ResourceTiming> resources = analyzer.report().getResources();
+		assertEquals(1, resources.size());
+		assertEquals("Queue", resources.get(0).getLogicalResourceId());
+		assertEquals(4000, resources.get(0).getDurationMillis());
+		assertEquals("CREATE_COMPLETE", resources.get(0).getStatus());
+	}
+
+	@Test
+	public void critical_path_follows_the_resources_that_completed_last() throws Exception {
+		add(0, "Database", "AWS::RDS::DBInstance", "CREATE_IN_PROGRESS");
+		add(0, "Bucket", "AWS::S3::Bucket", "CREATE_IN_PROGRESS");
+		add(3, "Bucket", "AWS::S3::Bucket", "CREATE_COMPLETE");
+		add(3, "Distribution", "AWS::CloudFront::Distribution", "CREATE_IN_PROGRESS");
+		add(10, "Database", "AWS::RDS::DBInstance", "CREATE_COMPLETE");
+		add(10, "Instance", "AWS::EC2::Instance", "CREATE_IN_PROGRESS");
+		add(12, "Instance", "AWS::EC2::Instance", "CREATE_COMPLETE");
+		add(20, "Distribution", "AWS::CloudFront::Distribution", "CREATE_COMPLETE");
+
+		final ResourceTimingReport report = analyzer.report();
+		assertEquals(Arrays.asList("Bucket", "Distribution"), ids(report.getCriticalPath()));
+		assertEquals(20000, report.getCriticalPathMillis());
+		assertEquals("AWS::CloudFront::Distribution", report.getSlowestTypes().get(0).getResourceType());
+		assertEquals("AWS::RDS::DBInstance", report.getSlowestTypes().get(1).getResourceType());
+	}
+
+	@Test
+	public void no_report_without_completed_resources() throws Exception {
+		add(0, "Database", "AWS::RDS::DBInstance", "CREATE_IN_PROGRESS");
+		assertNull(analyzer.report());
+	}
+
+	private void add(final int second, final String logicalId, final String type, final String status) {
+		analyzer.add(new StackEvent().withTimestamp(new Date(second * 1000L)).withLogicalResourceId(logicalId)
+				.withResourceType(type).withResourceStatus(status));
+	}
+
+	private static List<String> ids(final List<ResourceTiming> resources) {
+		final List<String> list = new ArrayList<String>();
+		for (final ResourceTiming resource : resources) {
+			list.add(resource.getLogicalResourceId());
+		}
+		return list;
+	}
+
+}
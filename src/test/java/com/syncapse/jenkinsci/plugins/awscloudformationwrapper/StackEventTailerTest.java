@@ -0,0 +1,87 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsRequest;
+import com.amazonaws.services.cloudformation.model.DescribeStackEventsResult;
+import com.amazonaws.services.cloudformation.model.StackEvent;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StackEventTailerTest {
+
+	private static final String NL = System.getProperty("line.separator");
+
+	private StackEventTailer tailer; // SUT
+
+	private ByteArrayOutputStream output;
+
+	@Mock
+	private AmazonCloudFormation awsClient;
+
+	@Before
+	public void setup() throws Exception {
+		output = new ByteArrayOutputStream();
+		tailer = new StackEventTailer(new PrintStream(output, true));
+	}
+
+	@Test
+	public void events_are_printed_oldest_first_across_pages() throws Exception {
+		when(awsClient.describeStackEvents(any(DescribeStackEventsRequest.class))).thenReturn(
+				page("token", event("3"), event("2")), page(null, event("1")));
+
+		tailer.tail(awsClient, "stack");
+
+		assertEquals(line("1") + line("2") + line("3"), output.toString());
+	}
+
+	@Test
+	public void only_new_events_are_printed_on_the_next_tail() throws Exception {
+		when(awsClient.describeStackEvents(any(DescribeStackEventsRequest.class))).thenReturn(
+				page(null, event("2"), event("1")),
+				page("token", event("4"), event("3"), event("2")));
+
+		tailer.tail(awsClient, "stack");
+		output.reset();
+		tailer.tail(awsClient, "stack");
+
+		assertEquals(line("3") + line("4"), output.toString());
+	}
+
+	@Test
+	public void existing_events_are_skipped() throws Exception {
+		when(awsClient.describeStackEvents(any(DescribeStackEventsRequest.class))).thenReturn(
+				page("token", event("2"), event("1")),
+				page(null, event("3"), event("2")));
+
+		tailer.skipExisting(awsClient, "stack");
+		tailer.tail(awsClient, "stack");
+
+		assertEquals(line("3"), output.toString());
+	}
+
+	private String line(final String id) {
+		return StackEventTailer.format(event(id)) + NL;
+	}
+
+	private StackEvent event(final String id) {
+		return new StackEvent().withEventId(id).withResourceType("AWS::EC2::Instance")
+				.withResourceStatus("CREATE_COMPLETE");
+	}
+
+	private DescribeStackEventsResult page(final String nextToken, final StackEvent... events) {
+		return new DescribeStackEventsResult().withStackEvents(events).withNextToken(nextToken);
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StackLedgerTest {
+
+	private final StackLedger ledger = new StackLedger(null);
+
+	@Test
+	public void stack_is_recorded_once_per_build() throws Exception {
+		ledger.record(entry("job#1", "stack", null, StackLedger.CREATE));
+		ledger.record(entry("job#1", "stack", "stack-id", StackLedger.CREATED));
+		ledger.record(entry("job#2", "stack", "other-id", StackLedger.CREATE));
+
+		assertEquals(2, ledger.getEntries().size());
+		assertEquals("stack-id", ledger.getEntries().get(0).getStackId());
+		assertEquals(StackLedger.CREATED, ledger.getEntries().get(0).getOperation());
+	}
+
+	@Test
+	public void torn_down_stack_is_forgotten() throws Exception {
+		ledger.record(entry("job#1", "stack", "stack-id", StackLedger.DELETE));
+		ledger.remove("job#1", "stack");
+
+		assertTrue(ledger.getEntries().isEmpty());
+	}
+
+	private static StackLedger.Entry entry(final String buildId, final String stackName, final String stackId, final String operation) {
+		return new StackLedger.Entry(buildId, stackName, stackId, operation, "accessKey", null, Region.us_east_1);
+	}
+
+}
@@ -0,0 +1,72 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import hudson.FilePath;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StackOutputExporterTest {
+
+	@Rule
+	public TemporaryFolder workspace = new TemporaryFolder();
+
+	private final StackOutputExporter exporter = new StackOutputExporter(); // SUT
+
+	@Test
+	public void outputs_of_every_stack_are_exported() throws Exception {
+		exporter.add(stack("network", "VpcId", "vpc-1"));
+		exporter.add(stack("database", "Url", "jdbc:mysql://db:3306/app?a=b;c=d"));
+
+		final FilePath file = exporter.export(new FilePath(workspace.getRoot()), OutputFormat.PROPERTIES);
+
+		final Properties properties = new Properties();
+		properties.load(new StringReader(file.readToString()));
+		assertEquals("vpc-1", properties.getProperty("network_VpcId"));
+		assertEquals("jdbc:mysql://db:3306/app?a=b;c=d", properties.getProperty("database_Url"));
+		assertEquals("aws_stack_output.properties", file.getName());
+		assertEquals(1, workspace.getRoot().list().length);
+	}
+
+	@Test
+	public void json_holds_one_object_per_stack() throws Exception {
+		exporter.add(stack("network", "VpcId", "vpc-1"));
+		exporter.add(stack("web", "Banner", "say \"hi\"\n"));
+
+		assertEquals("{\n  \"network\": {\n    \"VpcId\": \"vpc-1\"\n  },\n  \"web\": {\n    \"Banner\": \"say \\\"hi\\\"\\n\"\n  }\n}\n",
+				exporter.render(OutputFormat.JSON));
+	}
+
+	@Test
+	public void dotenv_names_are_valid_variable_names() throws Exception {
+		exporter.add(stack("my-stack", "Cost", "$5"));
+
+		assertEquals("my_stack_Cost=\"\\$5\"\n", exporter.render(OutputFormat.DOTENV));
+		assertEquals("_1st", StackOutputExporter.toVariableName("1st"));
+	}
+
+	@Test
+	public void export_replaces_previous_file() throws Exception {
+		final FilePath root = new FilePath(workspace.getRoot());
+		root.child("aws_stack_output.env").write("OLD=1\n", "UTF-8");
+		exporter.add(stack("stack", "Key", "value"));
+
+		final FilePath file = exporter.export(root, OutputFormat.DOTENV);
+
+		assertEquals("stack_Key=\"value\"\n", file.readToString());
+		assertTrue(file.exists());
+		assertEquals(1, workspace.getRoot().list().length);
+	}
+
+	private static StackOutputsAction.StackRecord stack(final String name, final String key, final String value) {
+		return new StackOutputsAction.StackRecord(name, "arn:" + name, "CREATE_COMPLETE", Collections.singletonMap(key, value),
+				Collections.singletonMap(name + "_" + key, value), false);
+	}
+
+}
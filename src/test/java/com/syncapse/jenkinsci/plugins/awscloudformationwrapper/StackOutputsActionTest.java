@@ -0,0 +1,56 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import hudson.EnvVars;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class StackOutputsActionTest {
+
+	private final StackOutputsAction action = new StackOutputsAction(); // SUT
+
+	@Test
+	public void outputs_of_all_stacks_are_contributed_to_the_environment() throws Exception {
+		action.add(stack("network", "VpcId", "vpc-1"));
+		action.add(stack("database", "Url", "jdbc:url"));
+
+		final EnvVars env = new EnvVars();
+		action.buildEnvVars(null, env);
+
+		assertEquals("vpc-1", env.get("network_VpcId"));
+		assertEquals("jdbc:url", env.get("database_Url"));
+		assertEquals("arn:network", action.getStack("network").getStackId());
+		assertNull(action.getStack("other"));
+	}
+
+	@Test
+	public void variables_are_merged_once_per_stack() throws Exception {
+		action.add(stack("network", "VpcId", "vpc-1"));
+
+		final Map<String, String> variables = action.getVariables();
+
+		assertSame(variables, action.getVariables());
+	}
+
+	@Test
+	public void stack_deployed_again_replaces_its_outputs() throws Exception {
+		action.add(stack("network", "VpcId", "vpc-1"));
+		action.add(stack("database", "Url", "jdbc:url"));
+		action.add(stack("network", "VpcId", "vpc-2"));
+
+		assertEquals("vpc-2", action.getVariables().get("network_VpcId"));
+		assertEquals(Arrays.asList("database", "network"), Arrays.asList(action.getStacks().keySet().toArray()));
+	}
+
+	private static StackOutputsAction.StackRecord stack(final String name, final String key, final String value) {
+		return new StackOutputsAction.StackRecord(name, "arn:" + name, "CREATE_COMPLETE", Collections.singletonMap(key, value),
+				Collections.singletonMap(name + "_" + key, value), false);
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StackReuseCacheTest {
+
+	private final List<String> deleted = new ArrayList<String>();
+
+	@Test
+	public void cached_stack_is_found_by_fingerprint() throws Exception {
+		final StackReuseCache cache = cache(60000, 10);
+		final StackReuseCache.Entry entry = entry("stack-1");
+		assertTrue(cache.put("fingerprint", entry, "job#1"));
+
+		assertSame(entry, cache.lookup("fingerprint", "job#2"));
+		assertEquals("http://stack-1", cache.lookup("fingerprint", "job#2").getStackOutputs().get("url"));
+		assertNull(cache.lookup("other", "job#2"));
+	}
+
+	@Test
+	public void second_stack_with_the_same_fingerprint_is_left_to_its_creator() throws Exception {
+		final StackReuseCache cache = cache(60000, 10);
+		cache.put("fingerprint", entry("stack-1"), "job#1");
+
+		assertFalse(cache.put("fingerprint", entry("stack-2"), "job#1"));
+		assertEquals("stack-1", cache.lookup("fingerprint", "job#2").getStackName());
+		assertTrue(deleted.isEmpty());
+	}
+
+	@Test
+	public void least_recently_used_stack_is_deleted_when_full() throws Exception {
+		final StackReuseCache cache = cache(60000, 2);
+		cache.put("a", entry("stack-a"), "job#1");
+		cache.put("b", entry("stack-b"), "job#1");
+		cache.release("job#1");
+		cache.lookup("a", "job#2");
+		cache.put("c", entry("stack-c"), "job#2");
+
+		assertEquals(Collections.singletonList("stack-b"), deleted);
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void stack_is_not_deleted_while_a_build_uses_it() throws Exception {
+		final StackReuseCache cache = cache(60000, 1);
+		cache.put("a", entry("stack-a"), "job#1");
+		cache.put("b", entry("stack-b"), "job#2");
+
+		assertTrue(deleted.isEmpty());
+		assertEquals(2, cache.size());
+
+		cache.release("job#1");
+
+		assertEquals(Collections.singletonList("stack-a"), deleted);
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void expired_stacks_are_evicted() throws Exception {
+		final StackReuseCache cache = cache(-1, 10);
+		cache.put("fingerprint", entry("stack-1"), "job#1");
+
+		assertNull(cache.lookup("fingerprint", "job#2"));
+		assertTrue(cache.evictExpired().isEmpty());
+		cache.release("job#1");
+		assertEquals(1, cache.evictExpired().size());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void stack_deleted_elsewhere_is_no_longer_reused() throws Exception {
+		final StackReuseCache cache = cache(60000, 10);
+		cache.put("fingerprint", entry("stack-1"), "job#1");
+
+		cache.invalidate("id-stack-1");
+
+		assertNull(cache.lookup("fingerprint", "job#2"));
+		assertTrue(deleted.isEmpty());
+	}
+
+	@Test
+	public void cached_stack_is_held_in_its_account_and_region_only() throws Exception {
+		final StackReuseCache cache = cache(60000, 10);
+		cache.put("fingerprint", entry("stack-1"), "job#1");
+
+		assertTrue(cache.holds("stack-1", "accessKey", null));
+		assertFalse(cache.holds("stack-1", "otherKey", Region.us_east_1));
+		assertFalse(cache.holds("stack-1", "accessKey", Region.us_west_2));
+		assertFalse(cache.holds("stack-2", "accessKey", Region.us_east_1));
+	}
+
+	private StackReuseCache cache(final long ttl, final int maxEntries) {
+		return new StackReuseCache(null, ttl, maxEntries) {
+			@Override
+			void delete(final List<Entry> evicted) {
+				for (final Entry entry : evicted) {
+					deleted.add(entry.getStackName());
+				}
+			}
+		};
+	}
+
+	private StackReuseCache.Entry entry(final String stackName) {
+		return new StackReuseCache.Entry(stackName, "id-" + stackName,
+				Collections.singletonMap("url", "http://" + stackName), "accessKey", null, Region.us_east_1);
+	}
+
+}
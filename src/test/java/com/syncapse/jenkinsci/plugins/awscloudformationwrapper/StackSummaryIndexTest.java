@@ -0,0 +1,67 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.amazonaws.services.cloudformation.AmazonCloudFormation;
+import com.amazonaws.services.cloudformation.model.ListStacksRequest;
+import com.amazonaws.services.cloudformation.model.ListStacksResult;
+import com.amazonaws.services.cloudformation.model.StackSummary;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StackSummaryIndexTest {
+
+	@Mock
+	private AmazonCloudFormation awsClient;
+
+	@Test
+	public void stacks_of_all_pages_are_indexed() throws Exception {
+		when(awsClient.listStacks(any(ListStacksRequest.class))).thenReturn(
+				page("token", summary("app-1", 1)), page(null, summary("app-2", 2)));
+
+		final List<StackSummary> stacks = StackSummaryIndex.load(awsClient).getStacksWithPrefix("app-");
+
+		assertEquals(2, stacks.size());
+		verify(awsClient, times(2)).listStacks(any(ListStacksRequest.class));
+	}
+
+	@Test
+	public void stacks_with_prefix_are_sorted_oldest_first() throws Exception {
+		when(awsClient.listStacks(any(ListStacksRequest.class))).thenReturn(
+				page(null, summary("app-b", 1), summary("app-c", 3), summary("app-a", 2), summary("other", 0)));
+
+		final List<StackSummary> stacks = StackSummaryIndex.load(awsClient).getStacksWithPrefix("app-");
+
+		assertEquals("app-b", stacks.get(0).getStackName());
+		assertEquals("app-a", stacks.get(1).getStackName());
+		assertEquals("app-c", stacks.get(2).getStackName());
+	}
+
+	@Test
+	public void no_stack_matches_an_unknown_prefix() throws Exception {
+		when(awsClient.listStacks(any(ListStacksRequest.class))).thenReturn(page(null, summary("app", 1)));
+
+		assertTrue(StackSummaryIndex.load(awsClient).getStacksWithPrefix("db").isEmpty());
+	}
+
+	private StackSummary summary(final String name, final long created) {
+		return new StackSummary().withStackName(name).withCreationTime(new Date(created));
+	}
+
+	private ListStacksResult page(final String nextToken, final StackSummary... summaries) {
+		return new ListStacksResult().withStackSummaries(summaries).withNextToken(nextToken);
+	}
+
+}
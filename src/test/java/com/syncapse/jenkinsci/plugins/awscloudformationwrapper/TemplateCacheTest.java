@@ -0,0 +1,44 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class TemplateCacheTest {
+
+	private final TemplateCache cache = new TemplateCache(10); // SUT
+
+	@Test
+	public void same_body_gets_same_hash() {
+		assertEquals(TemplateCache.digest("{\"Resources\": {}}"), TemplateCache.digest("{\"Resources\": {}}"));
+		assertFalse(TemplateCache.digest("{\"Resources\": {}}").equals(TemplateCache.digest("{\"Resources\": []}")));
+	}
+
+	@Test
+	public void least_recently_used_template_is_evicted_when_full() {
+		cache.put(template("aaaa"));
+		cache.put(template("bbbb"));
+		cache.lookup(TemplateCache.digest("aaaa"));
+		cache.put(template("cccc"));
+
+		assertEquals("aaaa", cache.lookup(TemplateCache.digest("aaaa")));
+		assertNull(cache.lookup(TemplateCache.digest("bbbb")));
+		assertEquals("cccc", cache.lookup(TemplateCache.digest("cccc")));
+	}
+
+	@Test
+	public void template_larger_than_the_cache_is_kept_until_the_next_one() {
+		cache.put(template("aaaa"));
+		cache.put(template("a template larger than the cache"));
+
+		assertNull(cache.lookup(TemplateCache.digest("aaaa")));
+		assertEquals("a template larger than the cache", cache.lookup(TemplateCache.digest("a template larger than the cache")));
+	}
+
+	private TemplateCache.Template template(final String body) {
+		return new TemplateCache.Template(TemplateCache.digest(body), body);
+	}
+
+}
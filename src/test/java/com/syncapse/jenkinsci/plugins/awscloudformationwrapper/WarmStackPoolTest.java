@@ -0,0 +1,140 @@
+package com.syncapse.jenkinsci.plugins.awscloudformationwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.PrintStream;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WarmStackPoolTest {
+
+	private WarmStackPool pool; // SUT
+
+	@Mock private CloudFormation prototype;
+	@Mock private CloudFormation warmStack;
+
+	@Before
+	public void setUp() throws Exception {
+		pool = new WarmStackPool(MoreExecutors.sameThreadExecutor());
+		when(prototype.getFingerprint()).thenReturn("fingerprint");
+		when(prototype.getExpandedStackName()).thenReturn("app");
+		when(prototype.copy(anyString(), any(PrintStream.class))).thenReturn(warmStack);
+		when(warmStack.copy(anyString(), any(PrintStream.class))).thenReturn(warmStack);
+		when(warmStack.getExpandedStackName()).thenReturn("app-warm-1");
+		when(warmStack.startCreate()).thenReturn(Futures.immediateFuture(true));
+		when(warmStack.startDelete()).thenReturn(Futures.immediateFuture(true));
+		when(warmStack.getStackId()).thenReturn("stack-id");
+		when(warmStack.getStackOutputs()).thenReturn(Collections.singletonMap("url", "http://app"));
+	}
+
+	@Test
+	public void first_lease_finds_no_stack_and_fills_the_pool() throws Exception {
+		assertNull(pool.lease(prototype, new WarmPoolConfig(2, 60, false)));
+		verify(warmStack, times(2)).startCreate();
+	}
+
+	@Test
+	public void prepared_pool_serves_the_first_lease() throws Exception {
+		final WarmPoolConfig config = new WarmPoolConfig(1, 60, false);
+		pool.prepare(prototype, config);
+
+		assertNotNull(pool.lease(prototype, config));
+	}
+
+	@Test
+	public void pool_in_use_is_filled_again_after_a_failed_creation() throws Exception {
+		final WarmPoolConfig config = new WarmPoolConfig(1, 60, false);
+		when(warmStack.startCreate()).thenReturn(Futures.immediateFuture(false));
+		pool.prepare(prototype, config);
+		when(warmStack.startCreate()).thenReturn(Futures.immediateFuture(true));
+
+		pool.evictIdleStacks();
+
+		assertNotNull(pool.lease(prototype, config));
+	}
+
+	@Test
+	public void next_lease_gets_a_ready_stack_and_replaces_it() throws Exception {
+		final WarmPoolConfig config = new WarmPoolConfig(1, 60, false);
+		pool.lease(prototype, config);
+
+		final WarmStackPool.Lease lease = pool.lease(prototype, config);
+
+		assertNotNull(lease);
+		assertEquals("stack-id", lease.getStackId());
+		assertEquals("http://app", lease.getStackOutputs().get("url"));
+		verify(warmStack, times(2)).startCreate();
+	}
+
+	@Test
+	public void stack_is_not_given_back_to_a_full_pool() throws Exception {
+		final WarmPoolConfig config = new WarmPoolConfig(1, 60, true);
+		pool.lease(prototype, config);
+		final WarmStackPool.Lease lease = pool.lease(prototype, config);
+
+		assertFalse(pool.giveBack(lease, lease.getStackOutputs()));
+	}
+
+	@Test
+	public void stack_is_given_back_when_the_pool_has_room() throws Exception {
+		final WarmPoolConfig config = new WarmPoolConfig(1, 60, true);
+		pool.lease(prototype, config);
+		final WarmStackPool.Lease lease = pool.lease(prototype, config);
+		pool.lease(prototype, config); // takes the replacement.
+		when(warmStack.startCreate()).thenReturn(Futures.immediateFuture(false));
+		when(warmStack.getStackId()).thenReturn(null);
+		pool.lease(prototype, config);
+
+		assertTrue(pool.giveBack(lease, lease.getStackOutputs()));
+	}
+
+	@Test
+	public void leased_stack_is_held_until_released() throws Exception {
+		final WarmPoolConfig config = new WarmPoolConfig(1, 60, false);
+		pool.prepare(prototype, config);
+		when(warmStack.startCreate()).thenReturn(Futures.immediateFuture(false));
+		when(warmStack.getStackId()).thenReturn(null);
+		final WarmStackPool.Lease lease = pool.lease(prototype, config);
+
+		assertTrue(pool.holds("app-warm-1"));
+		pool.release(lease);
+		assertFalse(pool.holds("app-warm-1"));
+	}
+
+	@Test
+	public void failed_warm_stack_is_deleted_and_not_pooled() throws Exception {
+		when(warmStack.startCreate()).thenReturn(Futures.immediateFuture(false));
+		final WarmPoolConfig config = new WarmPoolConfig(1, 60, false);
+		pool.lease(prototype, config);
+
+		verify(warmStack).startDelete();
+		assertNull(pool.lease(prototype, config));
+	}
+
+	@Test
+	public void ready_stacks_are_kept_until_they_are_idle_too_long() throws Exception {
+		pool.lease(prototype, new WarmPoolConfig(1, 60, false));
+		pool.evictIdleStacks();
+		verify(warmStack, never()).startDelete();
+	}
+
+}